@@ -0,0 +1,94 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The classic hold model of pending event sets: the queue is filled with
+ * size events, then every operation removes the earliest one and adds a new
+ * one an exponential time later, like a discharge followed by the admission
+ * of a waiting patient. With O(1) amortized adds and polls the CalendarQueue
+ * takes about the same time per hold at 10^5 and 10^6 pending events, while
+ * the binary heap of java.util.PriorityQueue grows with log(size).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CalendarQueueBenchmark {
+
+    /** An event of the heap, the equivalent of a CalendarQueue node. */
+    private static final class Pending implements Comparable<Pending> {
+
+        double time;
+        long order;
+
+        @Override
+        public int compareTo(Pending other) {
+            int c = Double.compare(time, other.time);
+            return c != 0 ? c : Long.compare(order, other.order);
+        }
+    }
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"calendar", "heap"})
+    public String queue;
+
+    private CalendarQueue<Pending> calendar;
+    private PriorityQueue<Pending> heap;
+    private RandomStream random;
+    private double meanGap;
+    private long order;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new RandomStream(979);
+        // 12 days mean stay, as many pending events as inpatients
+        meanGap = 12 * ArrivalProcess.MINUTES_PER_DAY;
+        calendar = new CalendarQueue<>(size);
+        heap = new PriorityQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Pending event = new Pending();
+            event.time = random.NextExponential(1.0 / meanGap);
+            event.order = order++;
+            if (queue.equals("calendar")) {
+                calendar.add(event.time, event);
+            } else {
+                heap.add(event);
+            }
+        }
+    }
+
+    @Benchmark
+    public Pending hold() {
+        if (queue.equals("calendar")) {
+            double now = calendar.peekTime();
+            Pending event = calendar.poll();
+            event.time = now + random.NextExponential(1.0 / meanGap);
+            calendar.add(event.time, event);
+            return event;
+        }
+        Pending event = heap.poll();
+        event.time += random.NextExponential(1.0 / meanGap);
+        event.order = order++;
+        heap.add(event);
+        return event;
+    }
+
+}
@@ -0,0 +1,51 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.Experiment;
+import desmoj.core.simulator.TimeInstant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs one simulated year of a scenario with a counting sink, i.e. every
+ * MPatientGeneratorEvent/FPatientGeneratorEvent cycle without any
+ * persistence cost. The time per operation divided by the printed patient
+ * count gives the cost of one generated patient.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"CHO4", "CHO5"})
+    public String cho;
+
+    @Param({"true", "false"})
+    public boolean lightweight;
+
+    @Benchmark
+    public long simulateYear() {
+        CountingPatientSink sink = new CountingPatientSink();
+        ScenarioConfig scenario = new ScenarioConfig(cho, "2026", 0, 979, lightweight);
+        EventsExample model = new EventsExample(null, "GeneratorBenchmark", false, false, scenario, sink);
+        Experiment exp = new Experiment("GeneratorBenchmark", TimeUnit.SECONDS, TimeUnit.MINUTES, null);
+        model.connectToExperiment(exp);
+        exp.setShowProgressBar(false);
+        exp.stop(new TimeInstant(365, TimeUnit.DAYS));
+        exp.start();
+        exp.finish();
+        return sink.getCount();
+    }
+
+}
@@ -0,0 +1,55 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of DBHandler.InsertPatient against an embedded in-memory H2
+ * database, for different batch sizes. A fresh database is used for every
+ * iteration so the table does not grow across the whole run; it lives as
+ * long as the pool holds a connection to it and is dropped by Close().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    private DBHandler dbHandler;
+    private PatientRecord patient;
+    private int iteration = 0;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        dbHandler = DBHandler.ForEmbedded("jdbc:h2:mem:bench" + (iteration++), batchSize, true);
+        patient = new PatientRecord(300, 2, 1600, 84, "S7200", 3, 1, "CHO4", 2026);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        dbHandler.Close();
+    }
+
+    @Benchmark
+    public void insertPatient() {
+        dbHandler.InsertPatient(patient);
+    }
+
+}
@@ -0,0 +1,103 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.Experiment;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the per-patient attribute draws of EventsExample and of the
+ * diagnosis ID to code lookup done by the generator events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingBenchmark {
+
+    private Experiment exp;
+    private EventsExample model;
+    private Map<String, List<Double>> diagnosisList;// code -> (ID, frequency)
+
+    @Setup
+    public void setUp() {
+        model = new EventsExample(null, "SamplingBenchmark", false, false,
+                new ScenarioConfig("CHO4", "2026", 0, 979, true), new CountingPatientSink());
+        exp = new Experiment("SamplingBenchmark", TimeUnit.SECONDS, TimeUnit.MINUTES, null);
+        model.connectToExperiment(exp);
+        ScenarioTables.Frequencies diagnosis = model.getTables().getDiagnosis();
+        diagnosisList = new HashMap<>();
+        for (int i = 0; i < diagnosis.size(); i++) {
+            diagnosisList.put(model.getTables().getDiagnosisCode(diagnosis.getValue(i)),
+                    Arrays.asList((double) diagnosis.getValue(i), diagnosis.getFrequency(i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        exp.finish();
+    }
+
+    @Benchmark
+    public int sampleAge() {
+        return model.SampleAge();
+    }
+
+    @Benchmark
+    public int sampleHospital() {
+        return model.SampleHospital();
+    }
+
+    @Benchmark
+    public int sampleResidence() {
+        return model.SampleResidence();
+    }
+
+    @Benchmark
+    public int sampleFracType() {
+        return model.SampleFracType();
+    }
+
+    @Benchmark
+    public int sampleFragility() {
+        return model.SampleFragility();
+    }
+
+    @Benchmark
+    public String sampleDiagnosisCode() {
+        return model.SampleDiagnosisCode();
+    }
+
+    /**
+     * The lookup the generator events used before diagnosisCodes existed,
+     * kept as the baseline for sampleDiagnosisCode.
+     */
+    @Benchmark
+    public String sampleDiagnosisCodeByScan() {
+        int diagID = model.SampleDiagnosis();
+        return diagnosisList.entrySet().stream()
+                .filter(x -> x.getValue().get(0) == diagID)
+                .map(x -> x.getKey()).reduce("", String::concat);
+    }
+
+    @Benchmark
+    public PatientRecord samplePatient() {
+        return model.SamplePatient(2);
+    }
+
+}
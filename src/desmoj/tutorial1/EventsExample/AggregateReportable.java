@@ -0,0 +1,66 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.report.Reporter;
+import desmoj.core.simulator.Model;
+import desmoj.core.simulator.Reportable;
+import java.util.function.Supplier;
+
+/**
+ * One row of a PatientAggregates table in the DESMO-J report. The rows of
+ * one table share their group heading, group ID and columns; the entries
+ * are taken from the aggregates when the report is written at
+ * exp.report().
+ */
+public class AggregateReportable extends Reportable {
+
+    /**
+     * Writes the entries of an AggregateReportable as one report row.
+     */
+    public static class AggregateReporter extends Reporter {
+
+        private final Supplier<String[]> row;
+
+        public AggregateReporter(AggregateReportable source) {
+            super(source);
+            this.row = source.row;
+            columns = source.columns.clone();
+            numColumns = columns.length;
+            groupHeading = source.groupHeading;
+            groupID = source.groupID;
+            entries = new String[numColumns];
+        }
+
+        @Override
+        public String[] getEntries() {
+            String[] values = row.get();
+            System.arraycopy(values, 0, entries, 0, Math.min(values.length, numColumns));
+            return entries.clone();
+        }
+    }
+
+    private final String groupHeading;
+    private final int groupID;
+    private final String[] columns;
+    private final Supplier<String[]> row;
+
+    /**
+     * @param groupHeading heading of the table this row belongs to
+     * @param groupID orders the tables in the report
+     * @param columns column names of the table
+     * @param row entries of the row, one per column
+     */
+    public AggregateReportable(Model owner, String name, boolean showInReport, String groupHeading, int groupID,
+            String[] columns, Supplier<String[]> row) {
+        super(owner, name, showInReport, false);
+        this.groupHeading = groupHeading;
+        this.groupID = groupID;
+        this.columns = columns.clone();
+        this.row = row;
+    }
+
+    @Override
+    public Reporter createDefaultReporter() {
+        return new AggregateReporter(this);
+    }
+
+}
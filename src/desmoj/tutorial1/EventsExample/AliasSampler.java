@@ -0,0 +1,138 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.Arrays;
+
+/**
+ * Samples int values from an empirical frequency table in constant time
+ * using Walker's alias method (Vose's construction).
+ *
+ * Each draw consumes one uniform number from a RandomStream and returns a
+ * primitive int, so unlike DiscreteDistEmpirical.sample() nothing is boxed.
+ * The stream is fully determined by its seed; getState()/setState() expose
+ * the stream position so a run can be resumed.
+ */
+public final class AliasSampler {
+
+    private final int[] values;
+    private final double[] probability;
+    private final int[] alias;
+    private final RandomStream random;
+
+    /**
+     * @param values the sampled values
+     * @param weights relative frequency of each value (must not be negative)
+     * @param seed seed of the random stream
+     */
+    public AliasSampler(int[] values, double[] weights, long seed) {
+        int n = values.length;
+        if (n == 0 || weights.length != n) {
+            throw new IllegalArgumentException("An alias table needs one weight per value");
+        }
+        this.values = values.clone();
+        this.probability = new double[n];
+        this.alias = new int[n];
+        this.random = new RandomStream(seed);
+
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative frequency " + weight);
+            }
+            total += weight;
+        }
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left is 1 up to rounding errors
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1.0;
+        }
+    }
+
+    private AliasSampler(AliasSampler table, long seed) {
+        this.values = table.values;
+        this.probability = table.probability;
+        this.alias = table.alias;
+        this.random = new RandomStream(seed);
+    }
+
+    /**
+     * @return a sampler over the same table with its own random stream
+     */
+    public AliasSampler withSeed(long seed) {
+        return new AliasSampler(this, seed);
+    }
+
+    public int sample() {
+        double u = random.NextDouble() * values.length;
+        int column = (int) u;
+        return (u - column) < probability[column] ? values[column] : values[alias[column]];
+    }
+
+    public long getState() {
+        return random.getState();
+    }
+
+    public void setState(long state) {
+        random.setState(state);
+    }
+
+    /**
+     * Collects the entries of a frequency table one by one.
+     */
+    public static final class Builder {
+
+        private int[] values = new int[16];
+        private double[] frequencies = new double[16];
+        private int size = 0;
+
+        public Builder add(int value, double frequency) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+                frequencies = Arrays.copyOf(frequencies, 2 * size);
+            }
+            values[size] = value;
+            frequencies[size] = frequency;
+            size++;
+            return this;
+        }
+
+        public int[] getValues() {
+            return Arrays.copyOf(values, size);
+        }
+
+        public double[] getFrequencies() {
+            return Arrays.copyOf(frequencies, size);
+        }
+
+        public AliasSampler build(long seed) {
+            return new AliasSampler(getValues(), getFrequencies(), seed);
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.Arrays;
+
+/**
+ * Generates the arrival times of the patients of one sex.
+ *
+ * The yearly case count may change from one simulated year to the next, so
+ * a single run can cover a multi-year horizon. Three modes are supported:
+ * <ul>
+ * <li>CONSTANT: evenly spaced arrivals, the first one at time 0 (the
+ * behaviour of the original ContDistConstant inter-arrival times)</li>
+ * <li>POISSON: exponential inter-arrival times with the yearly rate</li>
+ * <li>NHPP: non-homogeneous Poisson process whose yearly rate is modulated
+ * by monthly and weekday factors, sampled by thinning</li>
+ * </ul>
+ * Arrival times are generated in blocks into a primitive array, so the
+ * generator events only read the next precomputed value. All times are in
+ * minutes since the start of the run; a simulated year has 365 days and
+ * day 0 is weekday 0.
+ */
+public class ArrivalProcess {
+
+    public enum Mode {
+        CONSTANT, POISSON, NHPP
+    }
+
+    /**
+     * The position of an arrival process: the last returned arrival, the
+     * arrivals already generated into the current block, and the state of
+     * the generator and its random stream. Together with the rates it was
+     * generated with it is enough to continue the process exactly.
+     */
+    public static final class State {
+
+        final Mode mode;
+        final double[] casesPerYear;
+        final double[] monthlyFactors;
+        final double[] weekdayFactors;
+        final double lastArrival;
+        final double generated;
+        final double candidate;
+        final long random;
+        final double[] pending;
+
+        State(Mode mode, double[] casesPerYear, double[] monthlyFactors, double[] weekdayFactors,
+                double lastArrival, double generated, double candidate, long random, double[] pending) {
+            this.mode = mode;
+            this.casesPerYear = casesPerYear;
+            this.monthlyFactors = monthlyFactors;
+            this.weekdayFactors = weekdayFactors;
+            this.lastArrival = lastArrival;
+            this.generated = generated;
+            this.candidate = candidate;
+            this.random = random;
+            this.pending = pending;
+        }
+
+        /**
+         * @return the time of the last returned arrival, i.e. the time the
+         * generator using this process is scheduled for
+         */
+        public double getLastArrival() {
+            return lastArrival;
+        }
+    }
+
+    static final double MINUTES_PER_DAY = 24.0 * 60.0;
+    static final double MINUTES_PER_YEAR = 365.0 * MINUTES_PER_DAY;
+    private static final int[] MONTH_START_DAY = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334, 365};
+
+    private final Mode mode;
+    private final double[] casesPerYear;
+    private final double[] monthlyFactors;
+    private final double[] weekdayFactors;
+    private final double maxRate;
+    private final RandomStream random;
+    private final double[] block;
+    private int next;
+    private double generated = Double.NaN;// last time written into a block
+    private double candidate = 0;// last thinning candidate
+    private double lastArrival = 0;
+
+    /**
+     * @param mode how arrivals are spaced
+     * @param casesPerYear expected number of patients in each simulated year
+     * of the horizon; the last value is used beyond the horizon
+     * @param monthlyFactors 12 relative intensities (mean 1), NHPP only
+     * @param weekdayFactors 7 relative intensities (mean 1), NHPP only
+     * @param seed seed of the random stream
+     * @param blockSize number of arrival times generated at once
+     */
+    public ArrivalProcess(Mode mode, double[] casesPerYear, double[] monthlyFactors, double[] weekdayFactors,
+            long seed, int blockSize) {
+        if (casesPerYear.length == 0) {
+            throw new IllegalArgumentException("The arrival process needs at least one year");
+        }
+        if (monthlyFactors.length != 12 || weekdayFactors.length != 7) {
+            throw new IllegalArgumentException("Expected 12 monthly and 7 weekday factors");
+        }
+        this.mode = mode;
+        this.casesPerYear = casesPerYear.clone();
+        this.monthlyFactors = mode == Mode.NHPP ? monthlyFactors.clone() : Flat(12);
+        this.weekdayFactors = mode == Mode.NHPP ? weekdayFactors.clone() : Flat(7);
+        this.random = new RandomStream(seed);
+        this.block = new double[Math.max(1, blockSize)];
+        this.next = block.length;
+
+        double maxCases = 0;
+        for (double cases : casesPerYear) {
+            maxCases = Math.max(maxCases, cases);
+        }
+        this.maxRate = maxCases / MINUTES_PER_YEAR * Max(this.monthlyFactors) * Max(this.weekdayFactors);
+    }
+
+    /**
+     * @return the time from the previous arrival (or the start of the run) to
+     * the next arrival, in minutes
+     */
+    public double NextInterArrivalTime() {
+        if (next == block.length) {
+            FillBlock();
+        }
+        double arrival = block[next++];
+        double interArrivalTime = arrival - lastArrival;
+        lastArrival = arrival;
+        return interArrivalTime;
+    }
+
+    /**
+     * @return expected number of arrivals per minute at the given time
+     */
+    public double Rate(double time) {
+        int day = (int) (time / MINUTES_PER_DAY);
+        int year = day / 365;
+        int dayOfYear = day % 365;
+        int month = 0;
+        while (dayOfYear >= MONTH_START_DAY[month + 1]) {
+            month++;
+        }
+        double cases = casesPerYear[Math.min(year, casesPerYear.length - 1)];
+        return cases / MINUTES_PER_YEAR * monthlyFactors[month] * weekdayFactors[day % 7];
+    }
+
+    /**
+     * @return the time of the last returned arrival, in minutes
+     */
+    public double getLastArrival() {
+        return lastArrival;
+    }
+
+    public State getState() {
+        return new State(mode, casesPerYear.clone(), monthlyFactors.clone(), weekdayFactors.clone(), lastArrival,
+                generated, candidate, random.getState(), Arrays.copyOfRange(block, next, block.length));
+    }
+
+    /**
+     * Continues from the given state. The arrivals already generated into
+     * the block of the state are kept if this process has the same rates up
+     * to the last of them, so a resumed run repeats the original one
+     * exactly. Otherwise, e.g. when a checkpoint branches into another
+     * scenario, the process restarts at the last returned arrival with the
+     * rates of this process; for the memoryless POISSON and NHPP modes this
+     * is again a valid sample path.
+     */
+    public void setState(State state) {
+        lastArrival = state.lastArrival;
+        random.setState(state.random);
+        if (state.pending.length <= block.length && SameRates(state)) {
+            System.arraycopy(state.pending, 0, block, block.length - state.pending.length, state.pending.length);
+            next = block.length - state.pending.length;
+            generated = state.generated;
+            candidate = state.candidate;
+        } else {
+            next = block.length;
+            generated = state.lastArrival;
+            candidate = state.lastArrival;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public RandomStream getRandomStream() {
+        return random;
+    }
+
+    private void FillBlock() {
+        for (int i = 0; i < block.length; i++) {
+            if (mode == Mode.CONSTANT) {
+                // the first arrival happens at time 0, like the original generators
+                generated = Double.isNaN(generated) ? 0 : generated + 1.0 / Rate(generated);
+            } else {
+                do {
+                    candidate += random.NextExponential(maxRate);
+                } while (random.NextDouble() * maxRate > Rate(candidate));
+                generated = candidate;
+            }
+            block[i] = generated;
+        }
+        next = 0;
+    }
+
+    private boolean SameRates(State state) {
+        if (mode != state.mode || !Arrays.equals(monthlyFactors, state.monthlyFactors)
+                || !Arrays.equals(weekdayFactors, state.weekdayFactors)) {
+            return false;
+        }
+        double until = state.pending.length > 0 ? state.pending[state.pending.length - 1] : state.generated;
+        int lastYear = Double.isNaN(until) ? 0 : (int) (until / MINUTES_PER_YEAR);
+        for (int year = 0; year <= lastYear; year++) {
+            double cases = casesPerYear[Math.min(year, casesPerYear.length - 1)];
+            double stateCases = state.casesPerYear[Math.min(year, state.casesPerYear.length - 1)];
+            if (cases != stateCases) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double[] Flat(int size) {
+        double[] factors = new double[size];
+        Arrays.fill(factors, 1.0);
+        return factors;
+    }
+
+    private static double Max(double[] values) {
+        double max = 0;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,246 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind stage between the patient generator events and a slow sink
+ * such as the database.
+ *
+ * The generator events only put an immutable PatientRecord into a bounded
+ * queue; a single writer thread drains the queue into the wrapped sink, so
+ * the scheduler thread never waits for JDBC. When the queue is full the record is
+ * either waited for (BLOCK) or discarded and counted (DROP). Close() drains
+ * all accepted records and then closes the wrapped sink.
+ *
+ * Flush() queues a marker behind the accepted records; the writer thread
+ * flushes the wrapped sink when it reaches the marker, so the wrapped sink
+ * is only ever used from the writer thread. If the wrapped sink throws, the
+ * writer keeps the exception and discards the rest of the queue, so that no
+ * producer stays blocked; InsertPatient(), Flush() and Close() then fail
+ * with it.
+ */
+public class AsyncPatientWriter implements PatientSink {
+
+    public enum OverflowPolicy {
+        BLOCK, DROP
+    }
+
+    /** marks the end of the stream for the writer thread */
+    private static final PatientRecord END_OF_STREAM = new PatientRecord(0, 0, 0, 0, null, 0, 0, null, 0);
+    /** asks the writer thread to flush the wrapped sink */
+    private static final PatientRecord FLUSH = new PatientRecord(0, 0, 0, 0, null, 0, 0, null, 0);
+
+    private final PatientSink target;
+    private final BlockingQueue<PatientRecord> queue;
+    private final OverflowPolicy policy;
+    private final Thread writer;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int maxQueueDepth = 0;
+    private volatile boolean closed = false;
+    private volatile RuntimeException failure;
+    private final Object flushLock = new Object();
+    private long flushesRequested = 0;// guarded by this
+    private long flushesDone = 0;// guarded by flushLock
+
+    public AsyncPatientWriter(PatientSink target, int capacity, OverflowPolicy policy) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.writer = new Thread(this::drain, "Patient Writer");
+        this.writer.start();
+    }
+
+    /**
+     * Hands a patient over to the writer thread. Depending on the overflow
+     * policy this call either waits for free space or drops the record when
+     * the queue is full.
+     */
+    @Override
+    public void InsertPatient(PatientRecord patient) {
+        if (closed) {
+            throw new IllegalStateException("Patient writer is already closed");
+        }
+        CheckFailure();
+        if (policy == OverflowPolicy.DROP) {
+            if (!queue.offer(patient)) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } else {
+            try {
+                queue.put(patient);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        submitted.incrementAndGet();
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * Waits until every record accepted so far has been written and the
+     * wrapped sink has been flushed.
+     *
+     * @throws IllegalStateException if the wrapped sink failed
+     */
+    @Override
+    public synchronized void Flush() {
+        if (closed) {
+            return;
+        }
+        CheckFailure();
+        long ticket = ++flushesRequested;
+        boolean interrupted = Put(FLUSH);
+        synchronized (flushLock) {
+            while (flushesDone < ticket && failure == null) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        CheckFailure();
+    }
+
+    /**
+     * Waits until every accepted record has been written, then closes the
+     * wrapped sink.
+     *
+     * @throws IllegalStateException if the wrapped sink failed; it is closed
+     * all the same
+     */
+    @Override
+    public void Close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = Put(END_OF_STREAM);
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        try {
+            target.Close();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        CheckFailure();
+    }
+
+    /**
+     * Queues a marker, waiting for space however often the caller is
+     * interrupted; the writer thread always drains, so space comes.
+     *
+     * @return whether the caller was interrupted meanwhile
+     */
+    private boolean Put(PatientRecord marker) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(marker);
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private void CheckFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Patient writer failed", failure);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            PatientRecord patient;
+            try {
+                patient = queue.take();
+            } catch (InterruptedException e) {
+                continue;// only Close() ends the writer, so nothing accepted is lost
+            }
+            if (patient == END_OF_STREAM) {
+                return;
+            }
+            if (patient == FLUSH) {
+                if (failure == null) {
+                    try {
+                        target.Flush();
+                    } catch (RuntimeException e) {
+                        Fail(e);
+                    }
+                }
+                synchronized (flushLock) {
+                    flushesDone++;
+                    flushLock.notifyAll();
+                }
+                continue;
+            }
+            if (failure != null) {
+                continue;// discarded, so that blocked producers get through
+            }
+            try {
+                target.InsertPatient(patient);
+                written.incrementAndGet();
+            } catch (RuntimeException e) {
+                Fail(e);
+            }
+        }
+    }
+
+    private void Fail(RuntimeException e) {
+        failure = e;
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+
+    /** @return number of records waiting in the queue */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /** @return highest queue depth seen so far */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /** @return number of records accepted but not yet written */
+    public long getWriterLag() {
+        return submitted.get() - written.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+}
@@ -0,0 +1,162 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.ArrayDeque;
+
+/**
+ * The beds of one hospital and the patients waiting for one.
+ *
+ * A bed pool only does the bookkeeping; HospitalCapacity decides when a
+ * patient arrives and schedules the discharges. Waiting patients are served
+ * first come, first served from an ArrayDeque, so admitting and queueing
+ * are constant time however long the queue gets. Occupancy and queue length
+ * are integrated over simulation time for their time averages.
+ */
+public final class BedPool {
+
+    /**
+     * A patient holding or waiting for a bed.
+     */
+    public static final class Inpatient {
+
+        public final PatientRecord patient;
+        public final double arrivalTime;// minutes
+        public final double lengthOfStay;// minutes
+
+        Inpatient(PatientRecord patient, double arrivalTime, double lengthOfStay) {
+            this.patient = patient;
+            this.arrivalTime = arrivalTime;
+            this.lengthOfStay = lengthOfStay;
+        }
+    }
+
+    private final int hospital;
+    private final int capacity;
+    private final ArrayDeque<Inpatient> waiting = new ArrayDeque<>();
+    private int occupied = 0;
+    private long admissions = 0;
+    private long queued = 0;
+    private long discharges = 0;
+    private double totalWait = 0;
+    private double maxWait = 0;
+    private int maxOccupied = 0;
+    private int maxWaiting = 0;
+    private double lastChange = 0;
+    private double occupiedArea = 0;// bed-minutes
+    private double waitingArea = 0;// patient-minutes
+
+    /**
+     * @param hospital the Hospital ID of the patients
+     * @param capacity number of beds
+     */
+    public BedPool(int hospital, int capacity) {
+        this.hospital = hospital;
+        this.capacity = Math.max(0, capacity);
+    }
+
+    /**
+     * Takes a bed for the arriving patient if one is free, otherwise puts
+     * the patient at the end of the queue.
+     *
+     * @return whether the patient was admitted and needs a discharge event
+     */
+    boolean Arrive(Inpatient inpatient, double now) {
+        Advance(now);
+        if (occupied < capacity) {
+            Admit(inpatient, now);
+            return true;
+        }
+        waiting.addLast(inpatient);
+        queued++;
+        maxWaiting = Math.max(maxWaiting, waiting.size());
+        return false;
+    }
+
+    /**
+     * Frees the bed of a discharged patient and gives it to the first one
+     * waiting.
+     *
+     * @return the admitted patient, who needs a discharge event, or null
+     */
+    Inpatient Discharge(double now) {
+        Advance(now);
+        occupied--;
+        discharges++;
+        Inpatient next = waiting.pollFirst();
+        if (next != null) {
+            Admit(next, now);
+        }
+        return next;
+    }
+
+    private void Admit(Inpatient inpatient, double now) {
+        occupied++;
+        admissions++;
+        maxOccupied = Math.max(maxOccupied, occupied);
+        double wait = now - inpatient.arrivalTime;
+        totalWait += wait;
+        maxWait = Math.max(maxWait, wait);
+    }
+
+    private void Advance(double now) {
+        occupiedArea += occupied * (now - lastChange);
+        waitingArea += waiting.size() * (now - lastChange);
+        lastChange = now;
+    }
+
+    public int getHospital() {
+        return hospital;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getOccupied() {
+        return occupied;
+    }
+
+    public int getWaiting() {
+        return waiting.size();
+    }
+
+    public long getAdmissions() {
+        return admissions;
+    }
+
+    public long getDischarges() {
+        return discharges;
+    }
+
+    /** @return number of patients who found no free bed */
+    public long getQueued() {
+        return queued;
+    }
+
+    public int getMaxOccupied() {
+        return maxOccupied;
+    }
+
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    /** @return mean wait for a bed of the admitted patients, in minutes */
+    public double getMeanWait() {
+        return admissions == 0 ? 0 : totalWait / admissions;
+    }
+
+    public double getMaxWait() {
+        return maxWait;
+    }
+
+    /** @return time-average number of occupied beds up to the given time */
+    public double getMeanOccupied(double now) {
+        return now <= 0 ? 0 : (occupiedArea + occupied * (now - lastChange)) / now;
+    }
+
+    /** @return time-average queue length up to the given time */
+    public double getMeanWaiting(double now) {
+        return now <= 0 ? 0 : (waitingArea + waiting.size() * (now - lastChange)) / now;
+    }
+
+}
@@ -0,0 +1,191 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the patients of one run into the LOSPredictions table as a whole,
+ * tagged with a run ID.
+ *
+ * The patients are staged in memory while the simulation runs. Close()
+ * deletes the rows of the run ID and inserts the staged ones in the same
+ * transaction, so a run is either stored completely or not at all, and
+ * loading the same run again replaces its rows instead of duplicating them.
+ *
+ * On SQL Server the rows are pushed with the driver's bulk copy API
+ * (SQLServerBulkCopy), which streams them in a single bulk insert instead
+ * of one statement per row. Other databases, e.g. a local H2 file standing
+ * in for the server, get JDBC batches of batchSize rows.
+ *
+ * Because nothing is stored before Close(), Flush() does not make the rows
+ * durable, and a run loads its patients only as a whole. Checkpoints and
+ * resumed runs therefore cannot use this sink: the rows before the
+ * checkpoint would not be stored when the checkpoint file is written, and
+ * the load of the resumed run would replace them with the rest of the run.
+ * EventsExample.createSink() rejects the combination.
+ *
+ * The RunID and prediction columns are created with the table in embedded
+ * databases; on SQL Server they have to be added once:
+ * <pre>
+ * Alter Table LOSPredictions Add PredictedLOS float NULL, Destination int NULL
+ * Alter Table LOSPredictions Add RunID varchar(64) NULL
+ * Create Index LOSPredictions_RunID On LOSPredictions (RunID)
+ * </pre>
+ */
+public class BulkPatientLoader implements PatientSink {
+
+    static final String TABLE = "LOSPredictions";
+    static final String[] COLUMNS = {"HospID", "Sex", "ResID", "Age", "Diag1", "ADM_FRACTURE_TYPE",
+        "ADM_FRAGILITY", "CHO", "SimYear", "PredictedLOS", "Destination", "RunID"};
+    private static final String DELETE_RUN = "Delete From LOSPredictions Where RunID = ?";
+    private static final String INSERT_PATIENT = "Insert Into LOSPredictions (HospID,Sex,ResID,Age,Diag1,"
+            + "ADM_FRACTURE_TYPE,ADM_FRAGILITY,CHO,SimYear,PredictedLOS,Destination,RunID)"
+            + " values(?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String CREATE_INDEX = "Create Index If Not Exists LOSPredictions_RunID On LOSPredictions (RunID)";
+
+    private final String jdbcUrl;
+    private final boolean bulkCopy;
+    private final String runID;
+    private final int batchSize;
+    private final List<PatientRecord> staged = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * Loads into the LOSPredictions table on the SQL Server instance with
+     * the bulk copy API.
+     */
+    public static BulkPatientLoader ForSqlServer(String DatabaseName, String runID, int batchSize) {
+        return new BulkPatientLoader("jdbc:sqlserver://BATTAH;user=user;password=1234;database=" + DatabaseName,
+                true, runID, batchSize);
+    }
+
+    /**
+     * Loads into a local embedded database (e.g. "jdbc:h2:./Predictions")
+     * with JDBC batches, creating the table and its RunID index if missing.
+     */
+    public static BulkPatientLoader ForEmbedded(String jdbcUrl, String runID, int batchSize) {
+        return new BulkPatientLoader(jdbcUrl, false, runID, batchSize);
+    }
+
+    /**
+     * @param jdbcUrl connection URL of the database
+     * @param bulkCopy use the SQL Server bulk copy API instead of batches
+     * @param runID identity of the run; its earlier rows are replaced
+     * @param batchSize rows per JDBC batch or bulk copy batch
+     */
+    BulkPatientLoader(String jdbcUrl, boolean bulkCopy, String runID, int batchSize) {
+        if (runID == null || runID.isEmpty()) {
+            throw new IllegalArgumentException("A bulk load needs a run ID");
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.bulkCopy = bulkCopy;
+        this.runID = runID;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void InsertPatient(PatientRecord patient) {
+        if (closed) {
+            throw new IllegalStateException("Run " + runID + " has already been loaded");
+        }
+        staged.add(patient);
+    }
+
+    /**
+     * Does nothing: the rows of a run are only loaded together, in Close().
+     */
+    @Override
+    public void Flush() {
+    }
+
+    /**
+     * Replaces the rows of the run ID with the staged patients in one
+     * transaction.
+     *
+     * @throws IllegalStateException if the load failed; the transaction is
+     * rolled back and the rows stored before are kept
+     */
+    @Override
+    public void Close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long start = System.nanoTime();
+        try (Connection con = DriverManager.getConnection(jdbcUrl)) {
+            if (!bulkCopy) {
+                try (Statement st = con.createStatement()) {
+                    st.execute(DBHandler.CREATE_TABLE);
+                    st.execute(CREATE_INDEX);
+                }
+            }
+            con.setAutoCommit(false);
+            try {
+                int deleted;
+                try (PreparedStatement delete = con.prepareStatement(DELETE_RUN)) {
+                    delete.setString(1, runID);
+                    deleted = delete.executeUpdate();
+                }
+                if (bulkCopy) {
+                    SqlServerBulkRecord.WriteToServer(con, staged, runID, batchSize);
+                } else {
+                    InsertBatches(con);
+                }
+                con.commit();
+                System.out.println("Loaded run " + runID + ": " + staged.size() + " rows (" + deleted
+                        + " replaced) in " + (System.nanoTime() - start) / 1000000 + " ms");
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Loading run " + runID + " failed", e);
+        } finally {
+            staged.clear();
+        }
+    }
+
+    public String getRunID() {
+        return runID;
+    }
+
+    /**
+     * @return the number of patients staged for the next load
+     */
+    public int getStagedCount() {
+        return staged.size();
+    }
+
+    private void InsertBatches(Connection con) throws SQLException {
+        try (PreparedStatement insert = con.prepareStatement(INSERT_PATIENT)) {
+            int pending = 0;
+            for (PatientRecord patient : staged) {
+                insert.setInt(1, patient.Hospital);
+                insert.setInt(2, patient.Sex);
+                insert.setInt(3, patient.ResID);
+                insert.setInt(4, patient.Age);
+                insert.setString(5, patient.Diag1);
+                insert.setInt(6, patient.FracType);
+                insert.setInt(7, patient.Fragility);
+                insert.setString(8, patient.CHO);
+                insert.setInt(9, patient.SimYear);
+                DBHandler.SetPrediction(insert, 10, patient);
+                insert.setString(12, runID);
+                insert.addBatch();
+                if (++pending == batchSize) {
+                    insert.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                insert.executeBatch();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.Arrays;
+
+/**
+ * A calendar queue (R. Brown, 1988) of items ordered by a double time, for
+ * pending event sets of 10^5 and more entries.
+ *
+ * The time axis is cut into buckets of a fixed width that wrap around like
+ * the days of a calendar year. Each bucket is a sorted linked list, so an
+ * add is a short list insert and a poll takes the head of the current
+ * bucket; both are O(1) amortized as long as the width keeps a few items per
+ * bucket. The number of buckets follows the size in powers of two, and the
+ * width is re-estimated from the spacing of the earliest items at every
+ * resize.
+ *
+ * Nodes are pooled: time, insertion number, item and list link live in
+ * parallel arrays indexed by node, and polled nodes go to a free list. A
+ * steady state of adds and polls therefore allocates nothing. Items with
+ * equal times come out in the order they were added, like the events of a
+ * DESMO-J event list.
+ *
+ * A CalendarQueue is not thread safe.
+ */
+public final class CalendarQueue<T> {
+
+    private static final int MIN_BUCKETS = 16;
+    private static final int WIDTH_SAMPLE = 25;
+    private static final int NIL = -1;
+
+    // node pool
+    private double[] times;
+    private long[] orders;
+    private Object[] items;
+    private int[] next;
+    private int free = NIL;
+    private int allocated = 0;
+    private long added = 0;
+
+    // calendar
+    private int[] heads;
+    private int[] tails;
+    private int mask;
+    private double width = 1;
+    private long current = 0;// virtual bucket (time / width), at most that of the earliest item
+    private int size = 0;
+
+    public CalendarQueue() {
+        this(1024);
+    }
+
+    /**
+     * @param initialCapacity number of items the node pool holds before it
+     * grows
+     */
+    public CalendarQueue(int initialCapacity) {
+        int capacity = Math.max(MIN_BUCKETS, initialCapacity);
+        times = new double[capacity];
+        orders = new long[capacity];
+        items = new Object[capacity];
+        next = new int[capacity];
+        heads = new int[MIN_BUCKETS];
+        tails = new int[MIN_BUCKETS];
+        Arrays.fill(heads, NIL);
+        mask = MIN_BUCKETS - 1;
+    }
+
+    /**
+     * Adds an item due at the given time, after all items with the same
+     * time.
+     */
+    public void add(double time, T item) {
+        if (Double.isNaN(time)) {
+            throw new IllegalArgumentException("NaN time");
+        }
+        int node = Allocate();
+        times[node] = time;
+        orders[node] = added++;
+        items[node] = item;
+        Link(node);
+        if (VirtualBucket(time) < current) {
+            current = VirtualBucket(time);
+        }
+        if (++size > 2 * heads.length) {
+            Resize(heads.length * 2);
+        }
+    }
+
+    /**
+     * Removes the item with the smallest time.
+     *
+     * @return the item, or null if the queue is empty
+     */
+    public T poll() {
+        if (size == 0) {
+            return null;
+        }
+        int node = Unlink(Find());
+        @SuppressWarnings("unchecked")
+        T item = (T) items[node];
+        Release(node);
+        if (--size < heads.length / 2 && heads.length > MIN_BUCKETS) {
+            Resize(heads.length / 2);
+        }
+        return item;
+    }
+
+    /**
+     * @return the item with the smallest time, or null if the queue is
+     * empty
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        return size == 0 ? null : (T) items[heads[Find()]];
+    }
+
+    /**
+     * @return the smallest time, or positive infinity if the queue is empty
+     */
+    public double peekTime() {
+        return size == 0 ? Double.POSITIVE_INFINITY : times[heads[Find()]];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return number of buckets of the calendar */
+    public int getBucketCount() {
+        return heads.length;
+    }
+
+    /** @return time span covered by one bucket */
+    public double getBucketWidth() {
+        return width;
+    }
+
+    /**
+     * @return the bucket whose head has the smallest time; the queue must
+     * not be empty
+     */
+    private int Find() {
+        // walk at most one calendar year from the current bucket
+        for (int step = 0; step <= mask; step++) {
+            int bucket = (int) (current & mask);
+            int head = heads[bucket];
+            if (head != NIL && VirtualBucket(times[head]) <= current) {
+                return bucket;
+            }
+            current++;
+        }
+        // nothing due within a year: jump straight to the earliest head
+        int best = NIL;
+        for (int bucket = 0; bucket <= mask; bucket++) {
+            int head = heads[bucket];
+            if (head != NIL && (best == NIL || Before(head, heads[best]))) {
+                best = bucket;
+            }
+        }
+        current = VirtualBucket(times[heads[best]]);
+        return best;
+    }
+
+    private long VirtualBucket(double time) {
+        return (long) Math.floor(time / width);
+    }
+
+    private boolean Before(int a, int b) {
+        return times[a] < times[b] || (times[a] == times[b] && orders[a] < orders[b]);
+    }
+
+    private void Link(int node) {
+        int bucket = (int) (VirtualBucket(times[node]) & mask);
+        int head = heads[bucket];
+        if (head == NIL) {
+            heads[bucket] = node;
+            tails[bucket] = node;
+            next[node] = NIL;
+        } else if (!Before(node, tails[bucket])) {
+            // the usual case for ties and increasing times: append
+            next[tails[bucket]] = node;
+            tails[bucket] = node;
+            next[node] = NIL;
+        } else if (Before(node, head)) {
+            next[node] = head;
+            heads[bucket] = node;
+        } else {
+            int previous = head;
+            while (!Before(node, next[previous])) {
+                previous = next[previous];
+            }
+            next[node] = next[previous];
+            next[previous] = node;
+        }
+    }
+
+    private int Unlink(int bucket) {
+        int node = heads[bucket];
+        heads[bucket] = next[node];
+        return node;
+    }
+
+    private int Allocate() {
+        if (free != NIL) {
+            int node = free;
+            free = next[node];
+            return node;
+        }
+        if (allocated == times.length) {
+            int capacity = times.length * 2;
+            times = Arrays.copyOf(times, capacity);
+            orders = Arrays.copyOf(orders, capacity);
+            items = Arrays.copyOf(items, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return allocated++;
+    }
+
+    private void Release(int node) {
+        items[node] = null;
+        next[node] = free;
+        free = node;
+    }
+
+    /**
+     * Rebuilds the calendar with the given number of buckets and a width of
+     * three times the mean spacing of the earliest items, ignoring spacings
+     * over twice the mean (Brown's estimate).
+     */
+    private void Resize(int bucketCount) {
+        double earliest = 0;
+        int sample = Math.min(size, WIDTH_SAMPLE);
+        if (sample > 0) {
+            int[] first = new int[sample];
+            for (int i = 0; i < sample; i++) {
+                first[i] = Unlink(Find());
+            }
+            earliest = times[first[0]];
+            double mean = (times[first[sample - 1]] - earliest) / Math.max(1, sample - 1);
+            double sum = 0;
+            int count = 0;
+            for (int i = 1; i < sample; i++) {
+                double spacing = times[first[i]] - times[first[i - 1]];
+                if (spacing <= 2 * mean) {
+                    sum += spacing;
+                    count++;
+                }
+            }
+            // put the sample back in front of its buckets, latest first
+            for (int i = sample - 1; i >= 0; i--) {
+                Relink(first[i]);
+            }
+            if (count > 0 && sum > 0) {
+                width = 3 * sum / count;
+            }
+        }
+        int[] oldHeads = heads;
+        heads = new int[bucketCount];
+        tails = new int[bucketCount];
+        Arrays.fill(heads, NIL);
+        mask = bucketCount - 1;
+        for (int head : oldHeads) {
+            for (int node = head; node != NIL; ) {
+                int following = next[node];
+                Link(node);
+                node = following;
+            }
+        }
+        current = VirtualBucket(earliest);
+    }
+
+    /**
+     * Puts a node taken off the head of its bucket back in front.
+     */
+    private void Relink(int node) {
+        int bucket = (int) (VirtualBucket(times[node]) & mask);
+        if (heads[bucket] == NIL) {
+            tails[bucket] = node;
+        }
+        next[node] = heads[bucket];
+        heads[bucket] = node;
+    }
+
+}
@@ -0,0 +1,314 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of an EventsExample at one simulation time, from which a later
+ * run can continue instead of simulating the years before it again.
+ *
+ * All random draws of the model come from RandomStreams, so the state of a
+ * model between two events is: the state of every attribute sampler, the
+ * state of every arrival process (whose last returned arrival is the time
+ * the generator is scheduled for), the patient counters and aggregates and
+ * the number of patients handed to the sink so far. Arrival events of patient entities
+ * are scheduled for the arrival time itself, so none is pending between two
+ * generator events.
+ *
+ * Layout (DataOutput, big endian):
+ * <pre>
+ * header:   magic "LOSK", version, CHO, SimYear, time (minutes), sink offset
+ * regions:  count, then per CHO: name, hospital and residence sampler
+ *           states, male and female arrival process states, numbers of
+ *           the pending male and female generator schedules
+ * samplers: age, fragility, fracture type and diagnosis sampler states
+ * counters: count, then key and value of every PatientStatistics counter
+ * aggregates: length, then the PatientAggregates state (see getState())
+ * </pre>
+ * An arrival process state is its mode, case counts and factors, the last
+ * returned arrival, the generator position, the random stream state and
+ * the arrivals already generated into its block.
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x4C4F534B;// "LOSK"
+    private static final int VERSION = 3;// 2: aggregates, 3: generator schedules
+
+    private final String cho;
+    private final int simYear;
+    private final double time;
+    private final long sinkOffset;
+    private final String[] regions;
+    private final long[] hospitalStates;
+    private final long[] residenceStates;
+    private final ArrivalProcess.State[] maleArrivals;
+    private final ArrivalProcess.State[] femaleArrivals;
+    private final long[] generatorSchedules;
+    private final long[] samplerStates;// age, fragility, fracture type, diagnosis
+    private final Map<String, Long> counts;
+    private final byte[] aggregates;
+
+    private Checkpoint(String cho, int simYear, double time, long sinkOffset, String[] regions,
+            long[] hospitalStates, long[] residenceStates, ArrivalProcess.State[] maleArrivals,
+            ArrivalProcess.State[] femaleArrivals, long[] generatorSchedules, long[] samplerStates,
+            Map<String, Long> counts, byte[] aggregates) {
+        this.cho = cho;
+        this.simYear = simYear;
+        this.time = time;
+        this.sinkOffset = sinkOffset;
+        this.regions = regions;
+        this.hospitalStates = hospitalStates;
+        this.residenceStates = residenceStates;
+        this.maleArrivals = maleArrivals;
+        this.femaleArrivals = femaleArrivals;
+        this.generatorSchedules = generatorSchedules;
+        this.samplerStates = samplerStates;
+        this.counts = counts;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Takes a snapshot of the given model. Must be called from an event of
+     * the model, i.e. between two generator events.
+     *
+     * @param time the present simulation time in minutes
+     * @throws IllegalStateException if the model has bed pools, whose
+     * inpatients and pending discharges are not part of a checkpoint
+     */
+    public static Checkpoint Capture(EventsExample model, double time) {
+        if (model.getCapacity() != null) {
+            throw new IllegalStateException("Checkpoints of a model with hospital beds are not supported");
+        }
+        int n = model.regions.length;
+        String[] regions = new String[n];
+        long[] hospitalStates = new long[n];
+        long[] residenceStates = new long[n];
+        ArrivalProcess.State[] maleArrivals = new ArrivalProcess.State[n];
+        ArrivalProcess.State[] femaleArrivals = new ArrivalProcess.State[n];
+        for (int i = 0; i < n; i++) {
+            ChoRegion region = model.regions[i];
+            regions[i] = region.getCHO();
+            hospitalStates[i] = region.hospitalSampler.getState();
+            residenceStates[i] = region.residenceSampler.getState();
+            maleArrivals[i] = region.maleArrivals.getState();
+            femaleArrivals[i] = region.femaleArrivals.getState();
+        }
+        long[] samplerStates = {model.ageSampler.getState(), model.fragilitySampler.getState(),
+            model.fractureTypeSampler.getState(), model.diagnosisSampler.getState()};
+        Map<String, Long> counts = model.getStatistics().getCounts();
+        ScenarioConfig scenario = model.getScenario();
+        return new Checkpoint(scenario.getCHO(), scenario.getSimYearAsInt(), time,
+                model.getStatistics().getTotal(), regions, hospitalStates, residenceStates, maleArrivals,
+                femaleArrivals, model.generatorSchedules.clone(), samplerStates, counts,
+                model.getAggregates().getState());
+    }
+
+    /**
+     * Puts the given freshly initialised model into the state of this
+     * checkpoint. The model may belong to another scenario with the same
+     * CHO and first year, e.g. with another arrival mode or a longer
+     * horizon.
+     *
+     * @throws IllegalArgumentException if the model simulates other CHOs or
+     * starts in another year
+     */
+    public void Restore(EventsExample model) {
+        ScenarioConfig scenario = model.getScenario();
+        if (!cho.equals(scenario.getCHO()) || simYear != scenario.getSimYearAsInt()
+                || regions.length != model.regions.length) {
+            throw new IllegalArgumentException("Checkpoint of " + cho + "/" + simYear
+                    + " does not match the scenario " + scenario);
+        }
+        for (int i = 0; i < regions.length; i++) {
+            ChoRegion region = model.regions[i];
+            if (!regions[i].equals(region.getCHO())) {
+                throw new IllegalArgumentException("Checkpoint region " + regions[i]
+                        + " does not match " + region.getCHO());
+            }
+            region.hospitalSampler.setState(hospitalStates[i]);
+            region.residenceSampler.setState(residenceStates[i]);
+            region.maleArrivals.setState(maleArrivals[i]);
+            region.femaleArrivals.setState(femaleArrivals[i]);
+        }
+        System.arraycopy(generatorSchedules, 0, model.generatorSchedules, 0, generatorSchedules.length);
+        model.schedules = Arrays.stream(generatorSchedules).max().orElse(-1) + 1;
+        model.ageSampler.setState(samplerStates[0]);
+        model.fragilitySampler.setState(samplerStates[1]);
+        model.fractureTypeSampler.setState(samplerStates[2]);
+        model.diagnosisSampler.setState(samplerStates[3]);
+        model.getStatistics().Merge(counts);
+        model.getAggregates().setState(aggregates);
+    }
+
+    /**
+     * @return the simulation time of the snapshot in minutes
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of patients handed to the sink before the snapshot;
+     * a resumed run hands over the patients from this offset on, and its
+     * database must hold no rows of the scenario or exactly this many (see
+     * EventsExample.CheckResumeTarget())
+     */
+    public long getSinkOffset() {
+        return sinkOffset;
+    }
+
+    public String getCHO() {
+        return cho;
+    }
+
+    public int getSimYear() {
+        return simYear;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file next to the given one and
+     * then moves it into place, so an interrupted run never leaves a
+     * truncated checkpoint behind.
+     */
+    public void Write(Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(cho);
+            out.writeInt(simYear);
+            out.writeDouble(time);
+            out.writeLong(sinkOffset);
+            out.writeInt(regions.length);
+            for (int i = 0; i < regions.length; i++) {
+                out.writeUTF(regions[i]);
+                out.writeLong(hospitalStates[i]);
+                out.writeLong(residenceStates[i]);
+                WriteArrivals(out, maleArrivals[i]);
+                WriteArrivals(out, femaleArrivals[i]);
+                out.writeLong(generatorSchedules[2 * i]);
+                out.writeLong(generatorSchedules[2 * i + 1]);
+            }
+            for (long state : samplerStates) {
+                out.writeLong(state);
+            }
+            out.writeInt(counts.size());
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                out.writeUTF(count.getKey());
+                out.writeLong(count.getValue());
+            }
+            out.writeInt(aggregates.length);
+            out.write(aggregates);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the file is not a checkpoint of
+     * this version
+     */
+    public static Checkpoint Read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported checkpoint version " + version);
+            }
+            String cho = in.readUTF();
+            int simYear = in.readInt();
+            double time = in.readDouble();
+            long sinkOffset = in.readLong();
+            int n = in.readInt();
+            String[] regions = new String[n];
+            long[] hospitalStates = new long[n];
+            long[] residenceStates = new long[n];
+            ArrivalProcess.State[] maleArrivals = new ArrivalProcess.State[n];
+            ArrivalProcess.State[] femaleArrivals = new ArrivalProcess.State[n];
+            long[] generatorSchedules = new long[2 * n];
+            for (int i = 0; i < n; i++) {
+                regions[i] = in.readUTF();
+                hospitalStates[i] = in.readLong();
+                residenceStates[i] = in.readLong();
+                maleArrivals[i] = ReadArrivals(in);
+                femaleArrivals[i] = ReadArrivals(in);
+                generatorSchedules[2 * i] = in.readLong();
+                generatorSchedules[2 * i + 1] = in.readLong();
+            }
+            long[] samplerStates = new long[4];
+            for (int i = 0; i < samplerStates.length; i++) {
+                samplerStates[i] = in.readLong();
+            }
+            Map<String, Long> counts = new TreeMap<>();
+            int countCount = in.readInt();
+            for (int i = 0; i < countCount; i++) {
+                counts.put(in.readUTF(), in.readLong());
+            }
+            byte[] aggregates = new byte[in.readInt()];
+            in.readFully(aggregates);
+            return new Checkpoint(cho, simYear, time, sinkOffset, regions, hospitalStates, residenceStates,
+                    maleArrivals, femaleArrivals, generatorSchedules, samplerStates, counts, aggregates);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void WriteArrivals(DataOutputStream out, ArrivalProcess.State state) throws IOException {
+        out.writeByte(state.mode.ordinal());
+        WriteDoubles(out, state.casesPerYear);
+        WriteDoubles(out, state.monthlyFactors);
+        WriteDoubles(out, state.weekdayFactors);
+        out.writeDouble(state.lastArrival);
+        out.writeDouble(state.generated);
+        out.writeDouble(state.candidate);
+        out.writeLong(state.random);
+        WriteDoubles(out, state.pending);
+    }
+
+    private static ArrivalProcess.State ReadArrivals(DataInputStream in) throws IOException {
+        ArrivalProcess.Mode mode = ArrivalProcess.Mode.values()[in.readByte()];
+        double[] casesPerYear = ReadDoubles(in);
+        double[] monthlyFactors = ReadDoubles(in);
+        double[] weekdayFactors = ReadDoubles(in);
+        double lastArrival = in.readDouble();
+        double generated = in.readDouble();
+        double candidate = in.readDouble();
+        long random = in.readLong();
+        double[] pending = ReadDoubles(in);
+        return new ArrivalProcess.State(mode, casesPerYear, monthlyFactors, weekdayFactors, lastArrival,
+                generated, candidate, random, pending);
+    }
+
+    private static void WriteDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] ReadDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,32 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.ExternalEvent;
+import desmoj.core.simulator.Model;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a Checkpoint of the model at the time it is scheduled for. The
+ * patient sink is flushed first, so the rows before the checkpoint's sink
+ * offset are stored when the checkpoint file appears.
+ */
+public class CheckpointEvent extends ExternalEvent {
+
+    private final Path file;
+
+    public CheckpointEvent(Model owner, String name, boolean showInTrace, Path file) {
+        super(owner, name, showInTrace);
+        this.file = file;
+    }
+
+    @Override
+    public void eventRoutine() {
+        EventsExample model = (EventsExample) getModel();
+        model.getPatientSink().Flush();
+        Checkpoint checkpoint = Checkpoint.Capture(model, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+        checkpoint.Write(file);
+        System.out.println("Checkpoint at day " + (long) (checkpoint.getTime() / ArrivalProcess.MINUTES_PER_DAY)
+                + " (" + checkpoint.getSinkOffset() + " patients) written to " + file);
+    }
+
+}
@@ -0,0 +1,101 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.dist.ContDistConstant;
+import desmoj.core.dist.DiscreteDistEmpirical;
+
+/**
+ * The CHO-specific part of an EventsExample: the source hospital and area
+ * of residence distributions and the male and female arrival processes of
+ * one CHO. A model of a single CHO has one region, a model of all CHOs has
+ * one per CHO. Age, diagnosis, fracture type and fragility are national
+ * distributions and are shared by all regions of a model.
+ */
+public final class ChoRegion {
+
+    private final String cho;
+    private final int index;
+    final ContDistConstant maleArrivalTime;
+    final ContDistConstant femaleArrivalTime;
+    final ArrivalProcess maleArrivals;
+    final ArrivalProcess femaleArrivals;
+    final DiscreteDistEmpirical hospital;
+    final DiscreteDistEmpirical residence;
+    final AliasSampler hospitalSampler;
+    final AliasSampler residenceSampler;
+
+    /**
+     * Creates the distributions of the given CHO. Each one takes its seed
+     * from the experiment's seed generator, so the regions of a model must
+     * always be created in the same order.
+     *
+     * @param suffix appended to the names of the distributions in the
+     * report, empty for a single-CHO model
+     */
+    ChoRegion(EventsExample model, String cho, int index, String suffix) {
+        ScenarioTables tables = model.getTables();
+        ScenarioConfig scenario = model.getScenario();
+        this.cho = cho.intern();
+        this.index = index;
+
+        double[] maleCases = tables.CasesPerYear(cho, scenario.getSimYearAsInt(), scenario.getHorizonYears(), 0);
+        System.out.println(suffix.isEmpty() ? "Male Total Count:" + maleCases[0]
+                : cho + " Male Total Count:" + maleCases[0]);
+        maleArrivalTime = new ContDistConstant(model, "TruckArrivalTimeStream" + suffix,
+                ArrivalProcess.MINUTES_PER_YEAR / maleCases[0], true, false);
+        maleArrivalTime.setNonNegative(true);
+        maleArrivals = new ArrivalProcess(scenario.getArrivalMode(), maleCases, GlobalObjects.monthlyArrivalFactors,
+                GlobalObjects.weekdayArrivalFactors, maleArrivalTime.getInitialSeed(), 1024);
+
+        double[] femaleCases = tables.CasesPerYear(cho, scenario.getSimYearAsInt(), scenario.getHorizonYears(), 1);
+        System.out.println(suffix.isEmpty() ? "Female Total Count:" + femaleCases[0]
+                : cho + " Female Total Count:" + femaleCases[0]);
+        femaleArrivalTime = new ContDistConstant(model, "TruckArrivalTimeStream" + suffix,
+                ArrivalProcess.MINUTES_PER_YEAR / femaleCases[0], true, false);
+        femaleArrivalTime.setNonNegative(true);
+        femaleArrivals = new ArrivalProcess(scenario.getArrivalMode(), femaleCases, GlobalObjects.monthlyArrivalFactors,
+                GlobalObjects.weekdayArrivalFactors, femaleArrivalTime.getInitialSeed(), 1024);
+
+        hospital = tables.getHospitals(cho).ToDistribution(model, "Source Hospital" + suffix);
+        hospitalSampler = tables.getHospitals(cho).Sampler(hospital.getInitialSeed());
+        residence = tables.getResidences(cho).ToDistribution(model, "Area of Residence" + suffix);
+        residenceSampler = tables.getResidences(cho).Sampler(residence.getInitialSeed());
+    }
+
+    /** @return the interned CHO name, e.g. "CHO4" */
+    public String getCHO() {
+        return cho;
+    }
+
+    /** @return the position of this region in EventsExample.getRegions() */
+    public int getIndex() {
+        return index;
+    }
+
+    public int SampleHospital() {
+        return hospitalSampler.sample();
+    }
+
+    public int SampleResidence() {
+        return residenceSampler.sample();
+    }
+
+    /**
+     * @return minutes until the next arrival of the given sex (1 male,
+     * 2 female)
+     */
+    public double NextInterArrivalTime(int sex) {
+        return sex == 1 ? maleArrivals.NextInterArrivalTime() : femaleArrivals.NextInterArrivalTime();
+    }
+
+    /**
+     * @return the simulation time of the next arrival of the given sex, in
+     * minutes; unlike a sum of inter-arrival times it is not rounded to the
+     * clock's epsilon on every arrival
+     */
+    public double NextArrival(int sex) {
+        ArrivalProcess arrivals = sex == 1 ? maleArrivals : femaleArrivals;
+        arrivals.NextInterArrivalTime();
+        return arrivals.getLastArrival();
+    }
+
+}
@@ -0,0 +1,182 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Fast-forward "cohort mode": generates the patients of a scenario without
+ * DESMO-J.
+ *
+ * The event-driven model only uses simulation time to decide how many
+ * patients arrive; their attributes are independent draws from the scenario
+ * tables. This generator therefore first counts the arrivals of each sex
+ * in each year of the horizon with the same ArrivalProcess, then samples the
+ * attributes in chunks that can be processed in parallel. Every chunk has
+ * its own samplers seeded from the scenario seed and the chunk number, so
+ * the output does not depend on the number of threads. The patients follow
+ * the same distributions as those of the event-driven path, but are not the
+ * same individual draws.
+ *
+ * With the CHO "ALL" every CHO of the scenario tables is generated in turn,
+ * each with its own arrivals and hospital and residence tables, like the
+ * all-CHOs mode of EventsExample. Every patient gets the year of its
+ * arrival as SimYear.
+ */
+public class CohortGenerator {
+
+    /** patients sampled by one task */
+    static final int CHUNK_SIZE = 8192;
+
+    private final ScenarioTables tables;
+    private final ScenarioConfig scenario;
+    private final String[] chos;
+    private final int years;
+    private final long[] counts;// [(2 * CHO + sex - 1) * years + year] -> arrivals in that year
+    private final long[] firstChunks;// segment as in counts -> its first chunk; last: all chunks
+    private final long maleCount;
+    private final long femaleCount;
+
+    public CohortGenerator(ScenarioTables tables, ScenarioConfig scenario) {
+        this.tables = tables;
+        this.scenario = scenario;
+        this.chos = scenario.isAllCHOs() ? tables.getCHOs().toArray(new String[0])
+                : new String[]{scenario.getCHO()};
+        this.years = scenario.getHorizonYears();
+        this.counts = new long[2 * chos.length * years];
+        this.firstChunks = new long[counts.length + 1];
+        long males = 0;
+        long females = 0;
+        for (int c = 0; c < chos.length; c++) {
+            for (int sex = 0; sex < 2; sex++) {
+                long[] perYear = CountArrivals(c, sex);
+                for (int year = 0; year < years; year++) {
+                    int segment = (2 * c + sex) * years + year;
+                    counts[segment] = perYear[year];
+                    firstChunks[segment + 1] = firstChunks[segment] + (perYear[year] + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                    if (sex == 0) {
+                        males += perYear[year];
+                    } else {
+                        females += perYear[year];
+                    }
+                }
+            }
+        }
+        this.maleCount = males;
+        this.femaleCount = females;
+    }
+
+    public long getMaleCount() {
+        return maleCount;
+    }
+
+    public long getFemaleCount() {
+        return femaleCount;
+    }
+
+    /**
+     * @return all patients of the scenario, CHO by CHO, males first within
+     * a CHO and year by year within a sex; the stream is parallel and keeps
+     * this order when consumed with forEachOrdered
+     */
+    public Stream<PatientRecord> Patients() {
+        return LongStream.range(0, firstChunks[firstChunks.length - 1]).parallel()
+                .mapToObj(this::Chunk)
+                .flatMap(List::stream);
+    }
+
+    /**
+     * Generates all patients into the given sink. Chunks are sampled in
+     * parallel but handed over one whole chunk at a time in chunk order, so
+     * the sink receives the same rows in the same order whatever the number
+     * of threads, and is only ever called from one thread at once.
+     *
+     * @return number of generated patients
+     */
+    public long Generate(PatientSink sink) {
+        LongStream.range(0, firstChunks[firstChunks.length - 1]).parallel()
+                .mapToObj(this::Chunk)
+                .forEachOrdered(patients -> {
+                    for (PatientRecord patient : patients) {
+                        sink.InsertPatient(patient);
+                    }
+                });
+        return maleCount + femaleCount;
+    }
+
+    /**
+     * Samples the patients of the given chunk, drawing the attributes in the
+     * same order as EventsExample.SamplePatient(). The chunks of a CHO, sex
+     * and year hold its patients first..min(first + CHUNK_SIZE, count) - 1.
+     */
+    private List<PatientRecord> Chunk(long chunk) {
+        int segment = 0;
+        while (chunk >= firstChunks[segment + 1]) {
+            segment++;
+        }
+        int sex = segment / years % 2 + 1;
+        long first = (chunk - firstChunks[segment]) * CHUNK_SIZE;
+        long count = counts[segment];
+        RandomStream seeds = new RandomStream(scenario.getSeed() ^ (chunk * 0xD1B54A32D192ED03L));
+        String cho = chos[segment / years / 2];
+        AliasSampler hospital = tables.getHospitals(cho).Sampler(seeds.NextLong());
+        AliasSampler residence = tables.getResidences(cho).Sampler(seeds.NextLong());
+        AliasSampler age = tables.getAge().Sampler(seeds.NextLong());
+        AliasSampler diagnosis = tables.getDiagnosis().Sampler(seeds.NextLong());
+        AliasSampler fractureType = tables.getFractureType().Sampler(seeds.NextLong());
+        AliasSampler fragility = tables.getFragility().Sampler(seeds.NextLong());
+        int simYear = scenario.getSimYearAsInt() + segment % years;
+
+        int size = (int) Math.min(CHUNK_SIZE, count - first);
+        List<PatientRecord> patients = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int patientHospital = hospital.sample();
+            int patientResidence = residence.sample();
+            int patientAge = age.sample();
+            String patientDiagnosis = tables.getDiagnosisCode(diagnosis.sample());
+            int patientFractureType = fractureType.sample();
+            int patientFragility = fragility.sample();
+            patients.add(new PatientRecord(patientHospital, sex, patientResidence, patientAge, patientDiagnosis,
+                    patientFractureType, patientFragility, cho, simYear));
+        }
+        return patients;
+    }
+
+    /**
+     * Counts the arrivals of the given CHO and sex (0 male, 1 female) in
+     * each year of the horizon, like the generator events of the
+     * event-driven model.
+     */
+    private long[] CountArrivals(int cho, int sex) {
+        double[] cases = tables.CasesPerYear(chos[cho], scenario.getSimYearAsInt(),
+                scenario.getHorizonYears(), sex);
+        ArrivalProcess arrivals = new ArrivalProcess(scenario.getArrivalMode(), cases,
+                GlobalObjects.monthlyArrivalFactors, GlobalObjects.weekdayArrivalFactors,
+                new RandomStream(scenario.getSeed() + 2 * cho + sex).NextLong(), 4096);
+        double end = scenario.getHorizonYears() * ArrivalProcess.MINUTES_PER_YEAR;
+        long[] count = new long[years];
+        double time = arrivals.NextInterArrivalTime();
+        while (time < end) {
+            count[(int) (time / ArrivalProcess.MINUTES_PER_YEAR)]++;
+            time += arrivals.NextInterArrivalTime();
+        }
+        return count;
+    }
+
+    /**
+     * Generates the scenario in GlobalObjects into the sink chosen like in
+     * EventsExample.main() and prints the time taken.
+     */
+    public static void main(String[] args) {
+        ScenarioConfig scenario = ScenarioConfig.FromGlobals();
+        PatientSink sink = EventsExample.createSink(args, scenario);
+        long start = System.currentTimeMillis();
+        CohortGenerator generator = new CohortGenerator(ScenarioTables.Default(), scenario);
+        long count = generator.Generate(sink);
+        sink.Close();
+        System.out.println("Generated Count:" + count + " (" + generator.getMaleCount() + " male, "
+                + generator.getFemaleCount() + " female) in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+}
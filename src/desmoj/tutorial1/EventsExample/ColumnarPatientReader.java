@@ -0,0 +1,134 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Loads a file written by ColumnarPatientSink into primitive column arrays,
+ * ready to be fed into the length-of-stay prediction step. The file is
+ * memory mapped and every column of a row group is copied with one bulk get.
+ */
+public class ColumnarPatientReader {
+
+    /**
+     * The patients of one run, one array per column. Diag1 holds codes into
+     * diagnosisDictionary. PredictedLOS is NaN and Destination NOT_SCORED for
+     * patients that were not scored, and for every patient of a version 1
+     * file.
+     */
+    public static final class Cohort {
+
+        public final String CHO;
+        public final int SimYear;
+        public final int[] Hospital;
+        public final int[] Sex;
+        public final int[] ResID;
+        public final int[] Age;
+        public final int[] Diag1;
+        public final int[] FracType;
+        public final int[] Fragility;
+        public final float[] PredictedLOS;
+        public final int[] Destination;
+        public final String[] diagnosisDictionary;
+
+        Cohort(String cho, int simYear, int rows, String[] diagnosisDictionary) {
+            CHO = cho;
+            SimYear = simYear;
+            Hospital = new int[rows];
+            Sex = new int[rows];
+            ResID = new int[rows];
+            Age = new int[rows];
+            Diag1 = new int[rows];
+            FracType = new int[rows];
+            Fragility = new int[rows];
+            PredictedLOS = new float[rows];
+            Destination = new int[rows];
+            this.diagnosisDictionary = diagnosisDictionary;
+        }
+
+        public int size() {
+            return Hospital.length;
+        }
+
+        /** @return the diagnosis code of the given row */
+        public String getDiagnosis(int row) {
+            return diagnosisDictionary[Diag1[row]];
+        }
+
+        /** @return the given row as a PatientRecord */
+        public PatientRecord getPatient(int row) {
+            return new PatientRecord(Hospital[row], Sex[row], ResID[row], Age[row], getDiagnosis(row),
+                    FracType[row], Fragility[row], CHO, SimYear, PredictedLOS[row], Destination[row]);
+        }
+    }
+
+    private ColumnarPatientReader() {
+    }
+
+    public static Cohort Read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt(0) != ColumnarPatientSink.MAGIC
+                    || data.getInt(data.limit() - 4) != ColumnarPatientSink.MAGIC) {
+                throw new IOException(file + " is not a complete columnar patient file");
+            }
+            int version = data.getInt(4);
+            if (version < 1 || version > ColumnarPatientSink.VERSION) {
+                throw new IOException("Unsupported columnar patient file version " + version);
+            }
+            long totalRows = data.getLong(data.limit() - 20);
+            int dictionaryOffset = (int) data.getLong(data.limit() - 12);
+            if (totalRows > Integer.MAX_VALUE) {
+                throw new IOException(file + " holds too many patients for one cohort");
+            }
+
+            data.position(8);
+            String cho = readString(data);
+            int simYear = data.getInt();
+            int rowGroupsStart = data.position();
+
+            data.position(dictionaryOffset);
+            String[] dictionary = new String[data.getInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(data);
+            }
+
+            Cohort cohort = new Cohort(cho, simYear, (int) totalRows, dictionary);
+            int[][] columns = {cohort.Hospital, cohort.Sex, cohort.ResID, cohort.Age,
+                cohort.Diag1, cohort.FracType, cohort.Fragility};
+            data.position(rowGroupsStart);
+            int row = 0;
+            if (version == 1) {
+                Arrays.fill(cohort.PredictedLOS, Float.NaN);
+            }
+            while (data.position() < dictionaryOffset) {
+                int rows = data.getInt();
+                for (int[] column : columns) {
+                    data.asIntBuffer().get(column, row, rows);
+                    data.position(data.position() + 4 * rows);
+                }
+                if (version > 1) {
+                    data.asFloatBuffer().get(cohort.PredictedLOS, row, rows);
+                    data.position(data.position() + 4 * rows);
+                    data.asIntBuffer().get(cohort.Destination, row, rows);
+                    data.position(data.position() + 4 * rows);
+                }
+                row += rows;
+            }
+            return cohort;
+        }
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getShort()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
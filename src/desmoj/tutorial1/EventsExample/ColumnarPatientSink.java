@@ -0,0 +1,180 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes generated patients into a compact columnar file instead of a
+ * database table.
+ *
+ * Layout (all numbers big endian):
+ * <pre>
+ * header:     magic "LOSC", version, CHO (length prefixed UTF-8), SimYear
+ * row group:  row count n, then n values per column in the order
+ *             Hospital, Sex, ResID, Age, Diag1 code, FracType, Fragility,
+ *             PredictedLOS (float, NaN if not scored), Destination (int)
+ * dictionary: entry count, then the Diag1 strings (length prefixed UTF-8)
+ *             in code order
+ * trailer:    total row count (long), dictionary offset (long), magic
+ * </pre>
+ * CHO and SimYear are the same for every patient of a one-year, single-CHO
+ * run and are therefore only stored once in the header; runs over all CHOs
+ * or several years need a database sink. Version 1 files have no
+ * prediction columns. Use ColumnarPatientReader to load a file.
+ */
+public class ColumnarPatientSink implements PatientSink {
+
+    static final int MAGIC = 0x4C4F5343;// "LOSC"
+    static final int VERSION = 2;
+    static final int COLUMNS = 9;
+
+    private final FileChannel channel;
+    private final String cho;
+    private final int simYear;
+    private final int[][] columns;
+    private final ByteBuffer buffer;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> dictionaryEntries = new ArrayList<>();
+    private int rows = 0;
+    private long totalRows = 0;
+    private boolean closed = false;
+
+    /**
+     * @param file the file to create (an existing file is replaced)
+     * @param cho the CHO of the run
+     * @param simYear the simulated year of the run
+     * @param rowGroupSize number of patients buffered before they are written
+     */
+    public ColumnarPatientSink(Path file, String cho, int simYear, int rowGroupSize) {
+        this.cho = cho;
+        this.simYear = simYear;
+        this.columns = new int[COLUMNS][Math.max(1, rowGroupSize)];
+        this.buffer = ByteBuffer.allocateDirect(4 + 4 * COLUMNS * columns[0].length);
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            byte[] choBytes = cho.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer header = ByteBuffer.allocate(14 + choBytes.length);
+            header.putInt(MAGIC).putInt(VERSION).putShort((short) choBytes.length).put(choBytes).putInt(simYear);
+            header.flip();
+            write(header);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void InsertPatient(PatientRecord patient) {
+        if (!cho.equals(patient.CHO) || simYear != patient.SimYear) {
+            throw new IllegalArgumentException("Patient of " + patient.CHO + "/" + patient.SimYear
+                    + " written to a columnar file of " + cho + "/" + simYear);
+        }
+        columns[0][rows] = patient.Hospital;
+        columns[1][rows] = patient.Sex;
+        columns[2][rows] = patient.ResID;
+        columns[3][rows] = patient.Age;
+        columns[4][rows] = DiagnosisCode(patient.Diag1);
+        columns[5][rows] = patient.FracType;
+        columns[6][rows] = patient.Fragility;
+        columns[7][rows] = Float.floatToIntBits((float) patient.getPredictedLOS());
+        columns[8][rows] = patient.getDestination();
+        if (++rows == columns[0].length) {
+            WriteRowGroup();
+        }
+    }
+
+    /**
+     * Writes the buffered row group; the file only becomes readable after
+     * Close() has written the dictionary and trailer.
+     */
+    @Override
+    public void Flush() {
+        if (rows > 0) {
+            WriteRowGroup();
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void Close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (rows > 0) {
+            WriteRowGroup();
+        }
+        try {
+            long dictionaryOffset = channel.position();
+            int size = 4 + 20;
+            List<byte[]> encoded = new ArrayList<>(dictionaryEntries.size());
+            for (String code : dictionaryEntries) {
+                byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                size += 2 + bytes.length;
+            }
+            ByteBuffer footer = ByteBuffer.allocate(size);
+            footer.putInt(encoded.size());
+            for (byte[] bytes : encoded) {
+                footer.putShort((short) bytes.length).put(bytes);
+            }
+            footer.putLong(totalRows).putLong(dictionaryOffset).putInt(MAGIC);
+            footer.flip();
+            write(footer);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getRowCount() {
+        return totalRows + rows;
+    }
+
+    private int DiagnosisCode(String diag) {
+        Integer code = dictionary.get(diag);
+        if (code == null) {
+            code = dictionaryEntries.size();
+            dictionary.put(diag, code);
+            dictionaryEntries.add(diag);
+        }
+        return code;
+    }
+
+    private void WriteRowGroup() {
+        buffer.clear();
+        buffer.putInt(rows);
+        for (int[] column : columns) {
+            buffer.asIntBuffer().put(column, 0, rows);
+            buffer.position(buffer.position() + 4 * rows);
+        }
+        buffer.flip();
+        try {
+            write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        totalRows += rows;
+        rows = 0;
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of JDBC connections to one database.
+ *
+ * At most maxSize connections are borrowed at a time; Borrow() waits up to
+ * the timeout for one to be returned. Connections are opened lazily and
+ * checked with isValid() before they are handed out again, so a connection
+ * the server has dropped is replaced instead of failing the next insert.
+ * Every pooled connection caches its prepared statements by SQL text and
+ * closes them together with the connection.
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    /**
+     * A connection of the pool together with its prepared statements. It is
+     * used by one thread at a time, between Borrow() and Return().
+     */
+    public static final class PooledConnection {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * @return the cached prepared statement of the given SQL, prepared on
+         * the first call
+         */
+        public PreparedStatement Prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        boolean IsValid() {
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void Close() {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // the connection is closed next anyway
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // nothing left to release
+            }
+        }
+    }
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String jdbcUrl;
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<PooledConnection> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param driverClass JDBC driver to load explicitly, or null
+     * @param jdbcUrl connection URL of the database
+     * @param maxSize maximum number of connections borrowed at a time
+     * @param timeoutMillis how long Borrow() waits for a free connection
+     */
+    public ConnectionPool(String driverClass, String jdbcUrl, int maxSize, long timeoutMillis) {
+        if (driverClass != null) {
+            try {
+                Class.forName(driverClass);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("JDBC driver " + driverClass + " not found", e);
+            }
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.maxSize = Math.max(1, maxSize);
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * @return an open, validated connection; it must be handed back with
+     * Return() or, if it failed, Discard()
+     * @throws SQLException if no connection became free within the timeout
+     * or a new one could not be opened
+     */
+    public PooledConnection Borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool of " + jdbcUrl + " is closed");
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("No connection of " + jdbcUrl + " free within " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            if (pooled.IsValid()) {
+                return pooled;
+            }
+            pooled.Close();
+        }
+        try {
+            return new PooledConnection(DriverManager.getConnection(jdbcUrl));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a healthy connection back for reuse; its statements stay
+     * prepared.
+     */
+    public void Return(PooledConnection pooled) {
+        if (closed) {
+            pooled.Close();
+        } else {
+            idle.add(pooled);
+        }
+        permits.release();
+    }
+
+    /**
+     * Closes a connection that failed and frees its place in the pool.
+     */
+    public void Discard(PooledConnection pooled) {
+        pooled.Close();
+        permits.release();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public int getBorrowedCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Closes the idle connections; borrowed ones are closed when they are
+     * returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            pooled.Close();
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sink that counts the patients it receives. On its own it discards them,
+ * which is used for runs on machines without a database and for measuring
+ * the simulation core alone; it can also be put in front of another sink.
+ */
+public class CountingPatientSink implements PatientSink {
+
+    private final LongAdder count = new LongAdder();
+    private final PatientSink target;
+
+    public CountingPatientSink() {
+        this(null);
+    }
+
+    /**
+     * @param target sink the counted patients are passed on to, or null
+     */
+    public CountingPatientSink(PatientSink target) {
+        this.target = target;
+    }
+
+    @Override
+    public void InsertPatient(PatientRecord patient) {
+        count.increment();
+        if (target != null) {
+            target.InsertPatient(patient);
+        }
+    }
+
+    @Override
+    public void Flush() {
+        if (target != null) {
+            target.Flush();
+        }
+    }
+
+    @Override
+    public void Close() {
+        if (target != null) {
+            target.Close();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+}
@@ -1,40 +1,407 @@
 package desmoj.tutorial1.EventsExample;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class DBHandler {
+/**
+ * Writes generated patients into the LOSPredictions table of a JDBC database,
+ * either the SQL Server instance used for the LOS predictions (ForSqlServer)
+ * or a local embedded database file such as H2 or SQLite (ForEmbedded).
+ *
+ * Rows are added to a batch of a reusable prepared statement and sent to the
+ * server every batchSize patients, so a simulation run no longer pays one
+ * round trip and one commit per patient. The transaction is committed after
+ * every batch, or only once in Flush() when commitPerBatch is false.
+ * Flush() (or Close()) must be called after the experiment has finished,
+ * otherwise the last partial batch is lost.
+ *
+ * The PredictedLOS and Destination columns hold the predictions of a
+ * ScoringPatientSink in front of the handler and are NULL for patients that
+ * were not scored. On SQL Server they have to be added to an existing table
+ * once (see BulkPatientLoader).
+ *
+ * Connections come from a ConnectionPool whose connections keep their
+ * prepared statements. Every thread that inserts has its own batch and
+ * borrows a connection to send it, so models running concurrently can
+ * share one DBHandler, or one pool through several DBHandlers, without
+ * serializing on a single connection. With commitPerBatch, a batch that
+ * fails because the connection broke is sent again once on a new
+ * connection.
+ *
+ * With one commit per run the rows that were sent are held by the open
+ * transaction rather than in memory, so a run of any length keeps at most
+ * one batch per thread. They cannot be sent again, though: a broken
+ * connection rolls back the whole run, and the handler fails. Every
+ * inserting thread also keeps its connection until Flush(), so the pool
+ * must have at least one connection per inserting thread; the first
+ * thread beyond that fails at once rather than waiting for the run to
+ * end. Close() drops the sessions of all threads.
+ *
+ * setBatchLatency() records how long every batch takes to send (and, with
+ * commitPerBatch, to commit). InsertPatient() itself mostly only adds a row
+ * to the pending batch, so timing it would hide the JDBC cost.
+ *
+ * Failures are not swallowed. InsertPatient(), Flush() and Close() throw an
+ * IllegalStateException with the SQLException as its cause, and the run
+ * fails (behind an AsyncPatientWriter, at its next call). No row is dropped
+ * silently.
+ */
+public class DBHandler implements PatientSink {
 
-    private Connection con;
-    private Statement st;
+    private static final String INSERT_PATIENT = "Insert Into LOSPredictions (HospID,Sex,ResID,Age,Diag1,ADM_FRACTURE_TYPE,ADM_FRAGILITY,CHO,SimYear,"
+            + "PredictedLOS,Destination) values(?,?,?,?,?,?,?,?,?,?,?)";
+    static final String CREATE_TABLE = "Create Table If Not Exists LOSPredictions ("
+            + "HospID int, Sex int, ResID int, Age int, Diag1 varchar(10), ADM_FRACTURE_TYPE int,"
+            + " ADM_FRAGILITY int, CHO varchar(10), SimYear int, PredictedLOS float, Destination int,"
+            + " RunID varchar(64))";
+    private static final long BORROW_TIMEOUT_MILLIS = 30000;
 
-    DBHandler(String DatabaseName) {
+    /**
+     * The pending rows of one inserting thread. A connection is borrowed to
+     * send a batch and returned after its commit, so with commitPerBatch a
+     * pool smaller than the number of threads is enough. With one commit
+     * per run the connection is kept until Flush(), and the rows are
+     * released as soon as they are sent. The methods are
+     * synchronized so that Flush() and Close() from another thread can
+     * complete the session; the owning thread does not contend for the lock
+     * while it is inserting.
+     */
+    private final class Session {
+
+        private final List<PatientRecord> pending = new ArrayList<>();// not yet committed with commitPerBatch
+        private ConnectionPool.PooledConnection pooled;
+
+        synchronized void Insert(PatientRecord patient) throws SQLException {
+            pending.add(patient);
+            if (pending.size() >= batchSize) {
+                Send();
+            }
+        }
+
+        /** Sends the pending rows and commits them. */
+        synchronized void Flush() throws SQLException {
+            if (!pending.isEmpty()) {
+                Send();
+            }
+            if (pooled != null) {
+                Commit();
+            }
+        }
+
+        /** Gives up the pending rows and discards the connection. */
+        synchronized void Abandon() {
+            pending.clear();
+            if (pooled != null) {
+                pool.Discard(pooled);
+                pooled = null;
+            }
+        }
+
+        private void Send() throws SQLException {
+            long start = System.nanoTime();
+            if (pooled == null) {
+                pooled = Connect();
+            }
+            try {
+                ExecuteBatch();
+            } catch (SQLException e) {
+                if (pooled.IsValid()) {
+                    throw e;
+                }
+                pool.Discard(pooled);
+                pooled = null;
+                if (!commitPerBatch) {
+                    pending.clear();
+                    throw new SQLException("Connection broke, the uncommitted run is rolled back", e);
+                }
+                // the connection broke: send the uncommitted rows again on a new one
+                pooled = Connect();
+                ExecuteBatch();
+            }
+            if (commitPerBatch) {
+                Commit();
+            } else {
+                pending.clear();// held by the open transaction
+            }
+            LatencyHistogram latency = batchLatency;
+            if (latency != null) {
+                latency.Record(System.nanoTime() - start);
+            }
+        }
+
+        private void ExecuteBatch() throws SQLException {
+            PreparedStatement insertPatient = pooled.Prepare(INSERT_PATIENT);
+            try {
+                for (PatientRecord patient : pending) {
+                    insertPatient.setInt(1, patient.Hospital);
+                    insertPatient.setInt(2, patient.Sex);
+                    insertPatient.setInt(3, patient.ResID);
+                    insertPatient.setInt(4, patient.Age);
+                    insertPatient.setString(5, patient.Diag1);
+                    insertPatient.setInt(6, patient.FracType);
+                    insertPatient.setInt(7, patient.Fragility);
+                    insertPatient.setString(8, patient.CHO);
+                    insertPatient.setInt(9, patient.SimYear);
+                    SetPrediction(insertPatient, 10, patient);
+                    insertPatient.addBatch();
+                }
+                insertPatient.executeBatch();
+            } finally {
+                // the statement is kept with the connection: a failed batch
+                // must not be sent again with the next one
+                try {
+                    insertPatient.clearBatch();
+                } catch (SQLException e) {
+                    // the connection broke; the statement is discarded with it
+                }
+            }
+        }
+
+        private void Commit() throws SQLException {
+            try {
+                pooled.getConnection().commit();
+            } catch (SQLException e) {
+                pool.Discard(pooled);
+                pooled = null;
+                throw e;// with commitPerBatch the rows are sent again with the next batch
+            }
+            pending.clear();
+            pool.Return(pooled);
+            pooled = null;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final boolean ownsPool;
+    private final int batchSize;
+    private final boolean commitPerBatch;
+    private final ConcurrentHashMap<Thread, Session> sessions = new ConcurrentHashMap<>();// inserting thread -> its session
+    private volatile LatencyHistogram batchLatency;
+
+    /**
+     * Connects to the LOSPredictions table on the SQL Server instance.
+     *
+     * @param DatabaseName the database holding the LOSPredictions table
+     */
+    public static DBHandler ForSqlServer(String DatabaseName, int batchSize, boolean commitPerBatch) {
+        return new DBHandler("com.microsoft.sqlserver.jdbc.SQLServerDriver",
+                "jdbc:sqlserver://BATTAH;user=user;password=1234;database=" + DatabaseName,
+                false, batchSize, commitPerBatch);
+    }
+
+    /**
+     * Connects to a local embedded database (e.g. "jdbc:h2:./Predictions" or
+     * "jdbc:sqlite:Predictions.db") and creates the LOSPredictions table if
+     * it does not exist yet. The driver is located through the JDBC service
+     * loader, so it only has to be on the classpath.
+     */
+    public static DBHandler ForEmbedded(String jdbcUrl, int batchSize, boolean commitPerBatch) {
+        return new DBHandler(null, jdbcUrl, true, batchSize, commitPerBatch);
+    }
+
+    /**
+     * Creates a DBHandler with its own pool of GlobalObjects.dbPoolSize
+     * connections, closed together with the handler.
+     *
+     * @param driverClass JDBC driver to load explicitly, or null
+     * @param jdbcUrl connection URL of the database
+     * @param createTable create the LOSPredictions table if missing
+     * @param batchSize number of patients sent to the server in one batch
+     * @param commitPerBatch commit after every batch (true) or once per run
+     * in Flush() (false)
+     */
+    DBHandler(String driverClass, String jdbcUrl, boolean createTable, int batchSize, boolean commitPerBatch) {
+        this(new ConnectionPool(driverClass, jdbcUrl, GlobalObjects.dbPoolSize, BORROW_TIMEOUT_MILLIS), true,
+                createTable, batchSize, commitPerBatch);
+    }
+
+    /**
+     * Creates a DBHandler on a pool shared with other handlers, e.g. one per
+     * scenario of a ScenarioRunner; the pool is not closed by Close().
+     */
+    public DBHandler(ConnectionPool pool, boolean createTable, int batchSize, boolean commitPerBatch) {
+        this(pool, false, createTable, batchSize, commitPerBatch);
+    }
+
+    private DBHandler(ConnectionPool pool, boolean ownsPool, boolean createTable, int batchSize,
+            boolean commitPerBatch) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitPerBatch = commitPerBatch;
+        if (createTable) {
+            try {
+                ConnectionPool.PooledConnection pooled = pool.Borrow();
+                try (Statement st = pooled.getConnection().createStatement()) {
+                    st.execute(CREATE_TABLE);
+                } finally {
+                    pool.Return(pooled);
+                }
+            } catch (SQLException e) {
+                if (ownsPool) {
+                    pool.close();
+                }
+                throw new IllegalStateException("Cannot create the LOSPredictions table", e);
+            }
+        }
+    }
+
+    /**
+     * @param cho the CHO of the rows, null for all CHOs
+     * @return the number of rows of the given CHO and simulated years
+     * (inclusive) in LOSPredictions
+     * @throws IllegalStateException if the rows could not be counted
+     */
+    public long CountPatients(String cho, int firstYear, int lastYear) {
+        String sql = "Select Count(*) From LOSPredictions Where SimYear Between ? And ?"
+                + (cho == null ? "" : " And CHO = ?");
         try {
-            Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-            con = DriverManager.getConnection("jdbc:sqlserver://BATTAH;user=user;password=1234;database=" + DatabaseName);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    public void InsertPatient(Patient patient) {
-        String cmd = "Insert Into LOSPredictions (HospID,Sex,ResID,Age,Diag1,ADM_FRACTURE_TYPE,ADM_FRAGILITY,CHO,SimYear)"
-                + " values("
-                + patient.Hospital + ","
-                + patient.Sex + ","
-                + patient.ResID + ","
-                + patient.Age + ","
-                + "'" + patient.Diag1 + "',"
-                + patient.FracType + ","
-                + patient.Fragility + ","
-                + "'" + GlobalObjects.simCHO + "',"
-                + GlobalObjects.simYear
-                + ")";
+            ConnectionPool.PooledConnection pooled = pool.Borrow();
+            try (PreparedStatement count = pooled.getConnection().prepareStatement(sql)) {
+                count.setInt(1, firstYear);
+                count.setInt(2, lastYear);
+                if (cho != null) {
+                    count.setString(3, cho);
+                }
+                try (ResultSet rows = count.executeQuery()) {
+                    rows.next();
+                    return rows.getLong(1);
+                }
+            } finally {
+                pool.Return(pooled);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot count the rows of LOSPredictions", e);
+        }
+    }
+
+    /**
+     * Records the time of every batch that is sent, from borrowing the
+     * connection to the commit with commitPerBatch, into the given
+     * histogram; null stops recording.
+     */
+    public void setBatchLatency(LatencyHistogram latency) {
+        this.batchLatency = latency;
+    }
+
+    /**
+     * @throws IllegalStateException if a batch could not be stored
+     */
+    @Override
+    public void InsertPatient(PatientRecord patient) {
         try {
-            st = con.createStatement();
-            st.execute(cmd);
-            con.commit();
-        } catch (Exception e) {
-            e.printStackTrace();
+            Thread thread = Thread.currentThread();
+            Session s = sessions.get(thread);
+            if (s == null) {
+                s = sessions.computeIfAbsent(thread, t -> NewSession());
+            }
+            s.Insert(patient);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot insert patients into LOSPredictions", e);
+        }
+    }
+
+    /**
+     * Sends the pending partial batches of all threads and commits them.
+     *
+     * @throws IllegalStateException if a session could not be stored; the
+     * other sessions are flushed all the same
+     */
+    @Override
+    public void Flush() {
+        IllegalStateException failure = null;
+        for (Session s : sessions.values()) {
+            failure = FlushSession(s, failure, false);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Flushes the pending rows and returns the connections to the pool,
+     * which is closed as well if this handler created it.
+     *
+     * @throws IllegalStateException if a session could not be stored; its
+     * connection is discarded, the others are returned and the pool is
+     * closed all the same
+     */
+    @Override
+    public void Close() {
+        IllegalStateException failure = null;
+        for (Iterator<Session> i = sessions.values().iterator(); i.hasNext(); ) {
+            Session s = i.next();
+            i.remove();
+            failure = FlushSession(s, failure, true);
+        }
+        if (ownsPool) {
+            pool.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @param abandon whether a session that fails gives up its connection,
+     * which rolls back its uncommitted rows
+     * @return the failure so far, or the failure of the given session if it
+     * is the first
+     */
+    private IllegalStateException FlushSession(Session s, IllegalStateException failure, boolean abandon) {
+        try {
+            s.Flush();
+        } catch (SQLException e) {
+            if (abandon) {
+                s.Abandon();
+            }
+            if (failure == null) {
+                return new IllegalStateException("Cannot commit patients to LOSPredictions", e);
+            }
+            failure.addSuppressed(e);
+        }
+        return failure;
+    }
+
+    private ConnectionPool.PooledConnection Connect() throws SQLException {
+        ConnectionPool.PooledConnection pooled = pool.Borrow();
+        try {
+            pooled.getConnection().setAutoCommit(false);
+        } catch (SQLException e) {
+            pool.Discard(pooled);
+            throw e;
+        }
+        return pooled;
+    }
+
+    /**
+     * @throws IllegalStateException with one commit per run, if every
+     * connection of the pool is already held by the session of another
+     * thread; the new one would wait for a connection until the run ends
+     */
+    private Session NewSession() {
+        if (!commitPerBatch && sessions.size() >= pool.getMaxSize()) {
+            throw new IllegalStateException("One commit per run keeps a connection per inserting thread, and all "
+                    + pool.getMaxSize() + " connections of the pool are taken; raise dbPoolSize or commit per batch");
+        }
+        return new Session();
+    }
+
+    /**
+     * Sets the predicted length of stay and destination of the patient as
+     * the parameters from the given index on, both NULL if the patient was
+     * not scored.
+     */
+    static void SetPrediction(PreparedStatement insert, int index, PatientRecord patient) throws SQLException {
+        if (patient.isScored()) {
+            insert.setDouble(index, patient.getPredictedLOS());
+            insert.setInt(index + 1, patient.getDestination());
+        } else {
+            insert.setNull(index, Types.DOUBLE);
+            insert.setNull(index + 1, Types.INTEGER);
         }
     }
 
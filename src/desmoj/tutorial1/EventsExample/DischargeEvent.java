@@ -0,0 +1,48 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.ExternalEvent;
+import desmoj.core.simulator.Model;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The discharge of an inpatient at the end of the length of stay. It frees
+ * the bed, which goes to the first patient waiting at the same hospital.
+ *
+ * Created without an inpatient, the event stands for all discharges in the
+ * CalendarQueue of HospitalCapacity and handles the ones that are due.
+ */
+public class DischargeEvent extends ExternalEvent {
+
+    private final BedPool pool;
+    private final BedPool.Inpatient inpatient;
+
+    /**
+     * Creates the single event of the discharge calendar.
+     */
+    public DischargeEvent(Model owner, String name, boolean showInTrace) {
+        this(owner, name, showInTrace, null, null);
+    }
+
+    public DischargeEvent(Model owner, String name, boolean showInTrace, BedPool pool, BedPool.Inpatient inpatient) {
+        super(owner, name, showInTrace);
+        this.pool = pool;
+        this.inpatient = inpatient;
+    }
+
+    @Override
+    public void eventRoutine() {
+        EventsExample model = (EventsExample) getModel();
+        double now = presentTime().getTimeAsDouble(TimeUnit.MINUTES);
+        model.getMetrics().EventProcessed(now);
+        if (inpatient == null) {
+            model.getCapacity().DischargeDue(now);
+        } else {
+            model.getCapacity().Discharged(pool, inpatient, now);
+        }
+    }
+
+    public BedPool.Inpatient getInpatient() {
+        return inpatient;
+    }
+
+}
@@ -3,9 +3,8 @@ package desmoj.tutorial1.EventsExample;
 import desmoj.core.simulator.*;
 import desmoj.core.dist.*;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -18,20 +17,49 @@ import java.util.concurrent.TimeUnit;
  * @author Olaf Neidhardt, Ruth Meyer
  */
 public class EventsExample extends Model {
-DiscreteDistEmpirical hospital;
-DiscreteDistEmpirical residence;
 DiscreteDistEmpirical age;
 DiscreteDistEmpirical fragility;
 DiscreteDistEmpirical fractureType;
 DiscreteDistEmpirical diagnosisType;
-ContDistConstant malePatientArrivalTime;
-ContDistConstant femalePatientArrivalTime;
-Map<String, List<Double>> yearPopulations ; 
-Map<String, Double> choPercent;   
-Map<String, List<Double>> diagnosisList ; 
+AliasSampler ageSampler;
+AliasSampler fragilitySampler;
+AliasSampler fractureTypeSampler;
+AliasSampler diagnosisSampler;
+ChoRegion[] regions; // one per simulated CHO
+long[] generatorSchedules; // [2 * region + sex - 1] -> number of the pending schedule of that generator
+long schedules = 0; // number of generator schedules so far
+String[] diagnosisCodes; // Diagnosis ID -> interned diagnosis code
+private final ScenarioTables tables = ScenarioTables.Default();
+private final ScenarioConfig scenario;
+private final PatientSink patientSink;
+private TraceWriter traceWriter = TraceWriter.OFF;
+private SimulationMetrics metrics;
+private final PatientStatistics statistics = new PatientStatistics();
+private Checkpoint resumeFrom;
+private int[] checkpointDays = new int[0];
+private String checkpointFile;
+private HospitalCapacity capacity; // null unless beds are modelled, see InitCapacity()
+private LosModel losModel;
+private PatientAggregates aggregates;
 
+	/**
+	 * Creates a model of the scenario in GlobalObjects whose patients are
+	 * only counted, not stored.
+	 */
 	public EventsExample(Model owner, String modelName, boolean showInReport, boolean showInTrace) {
+		this(owner, modelName, showInReport, showInTrace, ScenarioConfig.FromGlobals(), new CountingPatientSink());
+	}
+
+	/**
+	 * Creates a model of the given scenario that hands every generated
+	 * patient to the given sink.
+	 */
+	public EventsExample(Model owner, String modelName, boolean showInReport, boolean showInTrace,
+			ScenarioConfig scenario, PatientSink patientSink) {
 		super(owner, modelName, showInReport, showInTrace);
+		this.scenario = scenario;
+		this.patientSink = patientSink;
+		this.metrics = new SimulationMetrics(modelName);
 	}
 	/**
 	 * Returns a description of the model to be used in the report.
@@ -51,419 +79,310 @@ Map<String, List<Double>> diagnosisList ;
 	 * created and scheduled for the start time of the simulation.
 	 */
     public void doInitialSchedules() {
-        // create the TruckGeneratorEvent
-        MPatientGeneratorEvent malePatientGenerator
-                = new MPatientGeneratorEvent(this, "Male Patient Generator", true);
-
-        FPatientGeneratorEvent femalePatientGenerator
-                = new FPatientGeneratorEvent(this, "Female Patient Generator", true);
+        double startTime = 0;
+        if (resumeFrom != null) {
+            resumeFrom.Restore(this);
+            startTime = resumeFrom.getTime();
+        }
+        // scheduled first, so a checkpoint is taken before the arrivals due
+        // at the same time, in a resumed run as well as in the original one
+        for (int day : checkpointDays) {
+            if (day * ArrivalProcess.MINUTES_PER_DAY > startTime) {
+                new CheckpointEvent(this, "Checkpoint Day " + day, traceIsOn(),
+                        java.nio.file.Paths.get(String.format(checkpointFile, day)))
+                        .schedule(new TimeInstant(day, TimeUnit.DAYS));
+            }
+        }
+        // create one pair of TruckGeneratorEvents per CHO; all of them share
+        // the event list of this model
+        ExternalEvent[] generators = new ExternalEvent[2 * regions.length];
+        for (ChoRegion region : regions) {
+            String suffix = scenario.isAllCHOs() ? " " + region.getCHO() : "";
+            generators[2 * region.getIndex()]
+                    = new MPatientGeneratorEvent(this, "Male Patient Generator" + suffix, traceIsOn() && !isLightweight(), region);
+            generators[2 * region.getIndex() + 1]
+                    = new FPatientGeneratorEvent(this, "Female Patient Generator" + suffix, traceIsOn() && !isLightweight(), region);
+            if (resumeFrom == null) {
+                // schedule for the first arrivals (the start of the simulation
+                // for evenly spaced arrivals)
+                ScheduleArrival(generators[2 * region.getIndex()], region, 1);
+                ScheduleArrival(generators[2 * region.getIndex() + 1], region, 2);
+            }
+        }
+        if (resumeFrom != null) {
+            // the restored arrival processes hold the pending arrivals; the
+            // generators are scheduled in the order of the original run, so
+            // those due at the same time draw the shared attributes in the
+            // same order
+            Integer[] order = new Integer[generators.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(generatorSchedules[a], generatorSchedules[b]));
+            for (int i : order) {
+                ArrivalProcess arrivals = i % 2 == 0 ? regions[i / 2].maleArrivals : regions[i / 2].femaleArrivals;
+                generators[i].schedule(new TimeInstant(arrivals.getLastArrival(), TimeUnit.MINUTES));
+            }
+        }
+    }
 
-        // schedule for start of simulation
-        malePatientGenerator.schedule(new TimeSpan(0));
-        femalePatientGenerator.schedule(new TimeSpan(0));
+    /**
+     * Schedules the given generator for the next arrival of the given sex
+     * (1 male, 2 female) in the given region. The schedules are numbered,
+     * because generators due at the same time run in the order they were
+     * scheduled in, and a checkpoint has to keep that order.
+     */
+    void ScheduleArrival(ExternalEvent generator, ChoRegion region, int sex) {
+        generatorSchedules[2 * region.getIndex() + sex - 1] = schedules++;
+        generator.schedule(new TimeInstant(region.NextArrival(sex), TimeUnit.MINUTES));
     }
 	/**
 	 * Initialises static model components like distributions and queues.
 	 */
     public void init() {
 
-        InitCHOs();
-        InitPopulations();
-        InitMPatientArrival();
-        InitFPatientArrival();
+        InitRegions();
         //Init Age
-        InitHospDistribution();
-        InitResidenceDistribution();
         InitAgeDistribution();
         InitFragilityDistribution();
         InitFracTypeDistribution();
         InitDiagDistribution();
+        InitAggregates();
+        InitCapacity();
     }
-    public void InitCHOs() {
-        choPercent = new HashMap<>();// Male population, then female population
-        choPercent.put("CHO1", 9.5);
-        choPercent.put("CHO2", 10.6);
-        choPercent.put("CHO3", 8.9);
-        choPercent.put("CHO4", 15.5);
-        choPercent.put("CHO5", 11.7);
-        choPercent.put("CHO6", 8.8);
-        choPercent.put("CHO7", 12.0);
-        choPercent.put("CHO8", 11.7);
-        choPercent.put("CHO9", 11.3);
-    }
-    public void InitPopulations()
-    {
-        yearPopulations = new HashMap<>();// Male population, then female population
-        yearPopulations.put("2013", Arrays.asList(381041.0, 425799.0));// 2013 will be used for model validation
-        yearPopulations.put("2016", Arrays.asList(422965.0, 465222.0));
-        yearPopulations.put("2017", Arrays.asList(437907.0, 479079.0));
-        yearPopulations.put("2018", Arrays.asList(453122.0, 493389.0));
-        yearPopulations.put("2019", Arrays.asList(468454.0, 507616.0));
-        yearPopulations.put("2020", Arrays.asList(484698.0, 523315.0));
-        yearPopulations.put("2021", Arrays.asList(501711.0, 539759.0));
-        yearPopulations.put("2022", Arrays.asList(518177.0, 555410.0));
-        yearPopulations.put("2023", Arrays.asList(535249.0, 571876.0));
-        yearPopulations.put("2024", Arrays.asList(552724.0, 588662.0));
-        yearPopulations.put("2025", Arrays.asList(570513.0, 606098.0));
-        yearPopulations.put("2026", Arrays.asList(588297.0, 622986.0));
-    }
-      public void InitMPatientArrival()
-      {
-       double maleFractureRate = 140.0 / 100000.0;//140 per 100K
-
-        double totalElderlyMalePop= yearPopulations.get(GlobalObjects.simYear).get(0);
-  
-      //  double totalElderlyMalePop = 422965.0;
-
-        double choPopulationPercent =choPercent.get(GlobalObjects.simCHO) / 100.0;
-
-        double choElderlyMalePop = totalElderlyMalePop * choPopulationPercent;
-
-        double choCases = Math.round(choElderlyMalePop * maleFractureRate);
-
-        System.out.println("Male Total Count:" + choCases);
-        double x = (365.0 * 24.0 * 60.0) / choCases;
-        malePatientArrivalTime = new ContDistConstant(this, "TruckArrivalTimeStream", x, true, false);
-        malePatientArrivalTime.setNonNegative(true); 
-      }        
-    public void InitFPatientArrival() {
-        double femaleFractureRate = 407.0 / 100000.0;//140 per 100K
-
-        double totalElderlyFemalePop = yearPopulations.get(GlobalObjects.simYear).get(1);
-
-        double choPopulationPercent =choPercent.get(GlobalObjects.simCHO) / 100.0 ;//CHO percent of the total elderly population
-
-        double choElderlyFemalePop = totalElderlyFemalePop * choPopulationPercent;
-
-        double choCases = Math.round(choElderlyFemalePop * femaleFractureRate);
-
-        System.out.println("Female Total Count:" + choCases);
-        double x = (365.0 * 24.0 * 60.0) / choCases;
-        femalePatientArrivalTime = new ContDistConstant(this, "TruckArrivalTimeStream", x, true, false);
-        femalePatientArrivalTime.setNonNegative(true);
+    /**
+     * Creates the CHO-specific distributions: one region for a single CHO,
+     * or one per CHO of the scenario tables in the all-CHOs mode.
+     */
+    public void InitRegions() {
+        if (!scenario.isAllCHOs()) {
+            regions = new ChoRegion[]{new ChoRegion(this, scenario.getCHO(), 0, "")};
+        } else {
+            String[] chos = tables.getCHOs().toArray(new String[0]);
+            regions = new ChoRegion[chos.length];
+            for (int i = 0; i < chos.length; i++) {
+                regions[i] = new ChoRegion(this, chos[i], i, " " + chos[i]);
+            }
+        }
+        generatorSchedules = new long[2 * regions.length];
     }
-   
+
     public void InitAgeDistribution() {
-        age = new DiscreteDistEmpirical(this, "Patient Age", false, false);
-        int[] ages = new int[]{60, 61, 62, 63, 64, 65, 66, 67, 68, 69, 70, 71, 72, 73, 74, 75, 76, 77, 78, 79, 80, 81, 82, 83, 84, 85, 86, 87, 88, 89, 90, 91, 92, 93, 94, 95, 96, 97, 98, 99, 100, 101, 102};
-        int[] frequency = new int[]{10, 19, 16, 19, 23, 30, 28, 34, 29, 36, 26, 37, 40, 49, 53, 58, 52, 48, 60, 85, 67, 80, 84, 78, 92, 75, 98, 100, 73, 79, 69, 57, 31, 29, 29, 19, 11, 12, 5, 7, 5, 2, 2};
-        for (int i = 0; i < ages.length; i++)
-            age.addEntry(ages[i], frequency[i]);
+        age = tables.getAge().ToDistribution(this, "Patient Age");
+        ageSampler = tables.getAge().Sampler(age.getInitialSeed());
     }
     public void InitFragilityDistribution() {
-        fragility = new DiscreteDistEmpirical(this, "Fragility History", false, false);
-        fragility.addEntry(1, 500);// Yes 
-        fragility.addEntry(2, 500);// No Fragility 
+        fragility = tables.getFragility().ToDistribution(this, "Fragility History");
+        fragilitySampler = tables.getFragility().Sampler(fragility.getInitialSeed());
     }
     public void InitFracTypeDistribution() {
-        fractureType = new DiscreteDistEmpirical(this, "Fracture Type", false, false);
-        fractureType.addEntry(1, 593);// Intracapsular-Displaced 
-        fractureType.addEntry(2, 171);// Intracapsular-Undisplaced
-        fractureType.addEntry(3, 697);// Intertrochanteric
-        fractureType.addEntry(4, 194);// Subtrochanteric
+        fractureType = tables.getFractureType().ToDistribution(this, "Fracture Type");
+        fractureTypeSampler = tables.getFractureType().Sampler(fractureType.getInitialSeed());
     }     
-    public void InitHospDistribution() {
-        hospital = new DiscreteDistEmpirical(this, "Source Hospital", false, false);
-        switch (GlobalObjects.simCHO) {
-            case "CHO1":
-                hospital.addEntry(500, 117);
-                hospital.addEntry(501, 54);
-                break;
-            case "CHO2":
-                hospital.addEntry(802, 50);
-                break;
-            case "CHO3":
-                hospital.addEntry(300, 223);
-                break;
-            case "CHO4":
-                hospital.addEntry(300, 100);//Extra
-                hospital.addEntry(724, 25);
-                hospital.addEntry(726, 3);
-                break;
-            case "CHO5":
-                hospital.addEntry(600, 345);
-                break;
-            case "CHO6":
-                hospital.addEntry(910, 241);
-                break;
-            case "CHO7":
-                hospital.addEntry(904, 72);
-                hospital.addEntry(1270, 144);
-                break;
-            case "CHO8":
-                hospital.addEntry(203, 165);
-                hospital.addEntry(922, 257);
-                break;
-            case "CHO9":
-                hospital.addEntry(108, 93);
-                hospital.addEntry(908, 59);
-                hospital.addEntry(923, 8);
-                break;
-        }
+    public void InitDiagDistribution() {
+        diagnosisType = tables.getDiagnosis().ToDistribution(this, "Diagnosis Type");
+        diagnosisSampler = tables.getDiagnosis().Sampler(diagnosisType.getInitialSeed());
+        // reverse table so that a sampled ID maps to its code without a scan
+        diagnosisCodes = tables.getDiagnosisCodes();
+    }    
+    
+    /**
+     * Creates the streaming aggregates of the generated patients and adds
+     * their tables to the report of this model.
+     */
+    public void InitAggregates() {
+        aggregates = new PatientAggregates(tables, statistics, getRegions());
+        aggregates.Register(this, reportIsOn());
     }
-    public void InitResidenceDistribution() {
-        residence = new DiscreteDistEmpirical(this, "Area of Residence", false, false);
-        switch (GlobalObjects.simCHO) {
-            case "CHO1":
-                residence.addEntry(2100, 1);
-                residence.addEntry(200, 1);
-                residence.addEntry(1900, 1);
-                residence.addEntry(3305, 1);
-                residence.addEntry(3311, 1);
-                residence.addEntry(100, 2);
-                residence.addEntry(3310, 2);
-                residence.addEntry(2000, 4);
-                residence.addEntry(2600, 18);
-                residence.addEntry(2700, 26);
-                residence.addEntry(2800, 114);
-                break;
-            case "CHO2":
-                residence.addEntry(107, 1);
-                residence.addEntry(109, 1);
-                residence.addEntry(1900, 1);
-                residence.addEntry(3501, 1);
-                residence.addEntry(2000, 2);
-                residence.addEntry(3303, 3);
-                residence.addEntry(2100, 41);
-                break;
-            case "CHO3":
-                residence.addEntry(1000, 1);
-                residence.addEntry(100, 1);
-                residence.addEntry(200, 1);
-                residence.addEntry(3100, 1);
-                residence.addEntry(3501, 1);
-                residence.addEntry(800, 4);
-                residence.addEntry(1700, 34);
-                residence.addEntry(1401, 38);
-                residence.addEntry(1500, 69);
-                residence.addEntry(1600, 73);
-                break;
-            case "CHO4":
-                residence.addEntry(3303, 1);
-                residence.addEntry(1300, 3);
-                residence.addEntry(1101, 8);
-                residence.addEntry(1200, 16);
-                /// extra from CHO3
-                 residence.addEntry(1700, 34);
-                residence.addEntry(1401, 38);
-                residence.addEntry(1500, 69);
-                residence.addEntry(1600, 73);
-                break;
-            case "CHO5":
-                residence.addEntry(200, 1);
-                residence.addEntry(212, 1);
-                residence.addEntry(216, 1);
-                residence.addEntry(300, 1);
-                residence.addEntry(1200, 1);
-                residence.addEntry(2500, 1);
-                residence.addEntry(2700, 1);
-                residence.addEntry(3307, 1);
-                residence.addEntry(3501, 1);
-                residence.addEntry(1700, 2);
-                residence.addEntry(400, 3);
-                residence.addEntry(3303, 6);
-                residence.addEntry(500, 29);
-                residence.addEntry(901, 29);
-                residence.addEntry(1000, 35);
-                residence.addEntry(700, 56);
-                residence.addEntry(800, 76);
-                residence.addEntry(600, 100);
-                break;
-            case "CHO6":
-                residence.addEntry(100, 1);
-                residence.addEntry(103, 1);
-                residence.addEntry(105, 1);
-                residence.addEntry(109, 1);
-                residence.addEntry(208, 1);
-                residence.addEntry(1500, 1);
-                residence.addEntry(2100, 1);
-                residence.addEntry(2700, 1);
-                residence.addEntry(3303, 1);
-                residence.addEntry(3501, 1);
-                residence.addEntry(202, 3);
-                residence.addEntry(600, 3);
-                residence.addEntry(217, 10);
-                residence.addEntry(216, 11);
-                residence.addEntry(206, 13);
-                residence.addEntry(218, 15);
-                residence.addEntry(214, 15);
-                residence.addEntry(204, 21);
-                residence.addEntry(400, 63);
-                residence.addEntry(200, 77);
-                break;
-            case "CHO7":
-                residence.addEntry(901, 1);
-                residence.addEntry(1500, 1);
-                residence.addEntry(1600, 1);
-                residence.addEntry(1900, 1);
-                residence.addEntry(2100, 1);
-                residence.addEntry(2500, 1);
-                residence.addEntry(3200, 1);
-                residence.addEntry(3303, 1);
-                residence.addEntry(3320, 1);
-                residence.addEntry(3501, 1);
-                residence.addEntry(3100, 2);
-                residence.addEntry(500, 2);
-                residence.addEntry(2300, 2);
-                residence.addEntry(220, 2);
-                residence.addEntry(202, 3);
-                residence.addEntry(200, 4);
-                residence.addEntry(210, 7);
-                residence.addEntry(400, 9);
-                residence.addEntry(214, 10);
-                residence.addEntry(222, 14);
-                residence.addEntry(208, 15);
-                residence.addEntry(224, 16);
-                residence.addEntry(206, 17);
-                residence.addEntry(216, 18);
-                residence.addEntry(212, 25);
-                residence.addEntry(300, 60);
-                break;
-            case "CHO8":
-                residence.addEntry(200, 1);
-                residence.addEntry(500, 1);
-                residence.addEntry(1500, 1);
-                residence.addEntry(2100, 1);
-                residence.addEntry(2600, 1);
-                residence.addEntry(3303, 1);
-                residence.addEntry(3305, 1);
-                residence.addEntry(3310, 1);
-                residence.addEntry(100, 4);
-                residence.addEntry(300, 5);
-                residence.addEntry(1700, 6);
-                residence.addEntry(2200, 31);
-                residence.addEntry(2400, 34);
-                residence.addEntry(2500, 34);
-                residence.addEntry(3000, 42);
-                residence.addEntry(2300, 52);
-                residence.addEntry(2900, 58);
-                residence.addEntry(3200, 66);
-                residence.addEntry(3100, 82);
-                break;
-            case "CHO9":
-                residence.addEntry(210, 1);
-                residence.addEntry(400, 1);
-                residence.addEntry(800, 1);
-                residence.addEntry(2000, 1);
-                residence.addEntry(2200, 1);
-                residence.addEntry(2600, 1);
-                residence.addEntry(2800, 1);
-                residence.addEntry(3303, 1);
-                residence.addEntry(3311, 1);
-                residence.addEntry(208, 2);
-                residence.addEntry(101, 3);
-                residence.addEntry(105, 4);
-                residence.addEntry(220, 4);
-                residence.addEntry(200, 5);
-                residence.addEntry(100, 6);
-                residence.addEntry(109, 11);
-                residence.addEntry(103, 11);
-                residence.addEntry(300, 15);
-                residence.addEntry(115, 18);
-                residence.addEntry(3200, 21);
-                residence.addEntry(107, 25);
-                residence.addEntry(111, 26);
-                break;
+    /**
+     * Creates the bed pools of the hospitals of the simulated CHOs when
+     * GlobalObjects.bedsPerHospital is positive or GlobalObjects.hospitalBeds
+     * is not empty. Created last, so that the seed of the length of stay
+     * stream, the next one of the experiment's seed generator, leaves the
+     * seeds of the patient attributes as they were. The stream is not a
+     * DESMO-J distribution and does not appear in the report.
+     */
+    public void InitCapacity() {
+        if (GlobalObjects.bedsPerHospital <= 0 && GlobalObjects.hospitalBeds.isEmpty()) {
+            return;
+        }
+        long lengthOfStaySeed = getExperiment().getDistributionManager().nextSeed();
+        int count = 0;
+        for (ChoRegion region : regions) {
+            count += tables.getHospitals(region.getCHO()).size();
         }
+        int[] hospitals = new int[count];
+        count = 0;
+        for (ChoRegion region : regions) {
+            ScenarioTables.Frequencies frequencies = tables.getHospitals(region.getCHO());
+            for (int i = 0; i < frequencies.size(); i++) {
+                hospitals[count++] = frequencies.getValue(i);
+            }
+        }
+        capacity = new HospitalCapacity(this, hospitals, GlobalObjects.bedsPerHospital, GlobalObjects.hospitalBeds,
+                GlobalObjects.meanLosDays, lengthOfStaySeed, GlobalObjects.dischargeCalendar);
     }
-    public void InitDiagDistribution() {
-        diagnosisList = new HashMap<>();// Diagnosis ID, then frequency
-        diagnosisList.put("S7205", Arrays.asList(1.0, 17.0));
-        diagnosisList.put("S7203", Arrays.asList(2.0, 210.0));
-        diagnosisList.put("S7211", Arrays.asList(3.0, 529.0));
-        diagnosisList.put("S7200", Arrays.asList(4.0, 612.0));
-        diagnosisList.put("S7210", Arrays.asList(5.0, 43.0));
-        diagnosisList.put("S7201", Arrays.asList(6.0, 182.0));
-        diagnosisList.put("S722", Arrays.asList(7.0, 90.0));
-        diagnosisList.put("S7204", Arrays.asList(8.0, 28.0));
-        diagnosisList.put("S729", Arrays.asList(9.0, 13.0));
-        diagnosisList.put("Z491", Arrays.asList(10.0, 1.0));
-        diagnosisList.put("S7240", Arrays.asList(11.0, 18.0));
-        diagnosisList.put("S066", Arrays.asList(12.0, 1.0));
-        diagnosisList.put("S681", Arrays.asList(13.0, 1.0));
-        diagnosisList.put("S723", Arrays.asList(14.0, 21.0));
-        diagnosisList.put("R296", Arrays.asList(15.0, 1.0));
-        diagnosisList.put("S4221", Arrays.asList(16.0, 1.0));
-        diagnosisList.put("S023", Arrays.asList(17.0, 1.0));
-        diagnosisList.put("N179", Arrays.asList(18.0, 1.0));
-        diagnosisList.put("I500", Arrays.asList(19.0, 2.0));
-        diagnosisList.put("M8445", Arrays.asList(20.0, 5.0));
-        diagnosisList.put("T856", Arrays.asList(21.0, 1.0));
-        diagnosisList.put("S5250", Arrays.asList(22.0, 2.0));
-        diagnosisList.put("S7208", Arrays.asList(23.0, 25.0));
-        diagnosisList.put("M7966", Arrays.asList(24.0, 1.0));
-        diagnosisList.put("I212", Arrays.asList(25.0, 1.0));
-        diagnosisList.put("R568", Arrays.asList(26.0, 2.0));
-        diagnosisList.put("S7243", Arrays.asList(27.0, 3.0));
-        diagnosisList.put("J440", Arrays.asList(28.0, 2.0));
-        diagnosisList.put("R000", Arrays.asList(29.0, 1.0));
-        diagnosisList.put("K297", Arrays.asList(30.0, 1.0));
-        diagnosisList.put("I638", Arrays.asList(31.0, 1.0));
-        diagnosisList.put("T840", Arrays.asList(32.0, 1.0));
-        diagnosisList.put("S798", Arrays.asList(33.0, 2.0));
-        diagnosisList.put("M5496", Arrays.asList(34.0, 1.0));
-        diagnosisList.put("K294", Arrays.asList(35.0, 1.0));
-        diagnosisList.put("M8094", Arrays.asList(36.0, 1.0));
-        diagnosisList.put("I639", Arrays.asList(37.0, 2.0));
-        diagnosisList.put("T842", Arrays.asList(38.0, 1.0));
-        diagnosisList.put("S8282", Arrays.asList(39.0, 1.0));
-        diagnosisList.put("S923", Arrays.asList(40.0, 1.0));
-        diagnosisList.put("C9000", Arrays.asList(41.0, 1.0));
-        diagnosisList.put("I460", Arrays.asList(42.0, 1.0));
-        diagnosisList.put("S4220", Arrays.asList(43.0, 1.0));
-        diagnosisList.put("I214", Arrays.asList(44.0, 2.0));
-        diagnosisList.put("J189", Arrays.asList(45.0, 1.0));
-        diagnosisList.put("T1408", Arrays.asList(46.0, 1.0));
-        diagnosisList.put("N390", Arrays.asList(47.0, 3.0));
-        diagnosisList.put("R53", Arrays.asList(48.0, 1.0));
-        diagnosisList.put("M161", Arrays.asList(49.0, 3.0));
-        diagnosisList.put("E86", Arrays.asList(50.0, 1.0));
-        diagnosisList.put("S7241", Arrays.asList(51.0, 1.0));
-        diagnosisList.put("S324", Arrays.asList(52.0, 1.0));
-        diagnosisList.put("S7300", Arrays.asList(53.0, 1.0));
-        diagnosisList.put("M8095", Arrays.asList(54.0, 2.0));
-        diagnosisList.put("S5251", Arrays.asList(55.0, 1.0));
-        diagnosisList.put("H353", Arrays.asList(56.0, 1.0));
-        diagnosisList.put("E1171", Arrays.asList(57.0, 1.0));
-        diagnosisList.put("M8435", Arrays.asList(58.0, 1.0));
-        diagnosisList.put("C61", Arrays.asList(59.0, 1.0));
-        diagnosisList.put("I620", Arrays.asList(60.0, 1.0));
-        diagnosisList.put("M7965", Arrays.asList(61.0, 1.0));
-        diagnosisList.put("I48", Arrays.asList(62.0, 1.0));
 
-        diagnosisType = new DiscreteDistEmpirical(this, "Diagnosis Type", false, false);
-        diagnosisList.entrySet().stream()
-                .forEach(diagnosis -> {
-                    double diagID = diagnosis.getValue().get(0);
-                    double frequency = diagnosis.getValue().get(1);
-                    diagnosisType.addEntry(diagID, frequency);
-                }
-                );
-    }    
-    
     public int SampleAge() {
-        return age.sample().intValue();
+        return ageSampler.sample();
     }
     public int SampleFragility() {
-        return fragility.sample().intValue();
+        return fragilitySampler.sample();
     }
     public int SampleFracType() {
-        return fractureType.sample().intValue();
+        return fractureTypeSampler.sample();
     }
+    /** Source hospital in the first (in single-CHO mode the only) CHO */
     public int SampleHospital() {
-        return hospital.sample().intValue();
+        return regions[0].SampleHospital();
     }
+    /** Area of residence in the first (in single-CHO mode the only) CHO */
     public int SampleResidence() {
-        return residence.sample().intValue();
+        return regions[0].SampleResidence();
     }
     public int SampleDiagnosis() {
-        return diagnosisType.sample().intValue();
+        return diagnosisSampler.sample();
+    }
+    public String SampleDiagnosisCode() {
+        return diagnosisCodes[SampleDiagnosis()];
+    }
+    /**
+     * Samples all attributes of a new patient of the given sex (1 male,
+     * 2 female) of the first CHO without creating a Patient entity.
+     */
+    public PatientRecord SamplePatient(int sex) {
+        return SamplePatient(regions[0], sex);
+    }
+    /**
+     * Samples all attributes of a new patient of the given CHO and sex
+     * without creating a Patient entity.
+     */
+    public PatientRecord SamplePatient(ChoRegion region, int sex) {
+        int hospital = region.SampleHospital();
+        int residence = region.SampleResidence();
+        int age = SampleAge();
+        String diagnosis = SampleDiagnosisCode();
+        int fractureType = SampleFracType();
+        int fragility = SampleFragility();
+        return new PatientRecord(hospital, sex, residence, age, diagnosis, fractureType, fragility,
+                region.getCHO(), getPresentSimYear());
+    }
+    /**
+     * @return the simulated year of the present simulation time, which
+     * every generated patient gets as its SimYear
+     */
+    public int getPresentSimYear() {
+        return scenario.getSimYearAt(presentTime().getTimeAsDouble(TimeUnit.MINUTES));
     }
+    /**
+     * In lightweight mode the generator events produce plain PatientRecords
+     * instead of Patient entities and PaientArrivalEvents, which keeps the
+     * event list down to the two generators.
+     */
+    public boolean isLightweight() {
+        return scenario.isLightweight();
+    }
+    public ScenarioTables getTables() {
+        return tables;
+    }
+    public ScenarioConfig getScenario() {
+        return scenario;
+    }
+    /**
+     * @return the simulated CHOs, in the order their distributions were
+     * created
+     */
+    public List<ChoRegion> getRegions() {
+        return Collections.unmodifiableList(Arrays.asList(regions));
+    }
+    /**
+     * @return the compact arrival trace, TraceWriter.OFF unless set
+     */
+    public TraceWriter getTraceWriter() {
+        return traceWriter;
+    }
+    public void setTraceWriter(TraceWriter traceWriter) {
+        this.traceWriter = traceWriter;
+    }
+    /**
+     * @return the counters of the patients that arrived in this model
+     */
+    public PatientStatistics getStatistics() {
+        return statistics;
+    }
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+    public PatientSink getPatientSink() {
+        return patientSink;
+    }
+    /**
+     * @return age, hospital, fracture type and diagnosis tables and
+     * quantile sketches of the patients generated so far
+     */
+    public PatientAggregates getAggregates() {
+        return aggregates;
+    }
+    /**
+     * @return the bed pools of the hospitals, null if beds are not modelled
+     */
+    public HospitalCapacity getCapacity() {
+        return capacity;
+    }
+    /**
+     * Takes the length of stay of admitted patients from the given model
+     * instead of the exponential draw.
+     */
+    public void setLosModel(LosModel losModel) {
+        this.losModel = losModel;
+    }
+    /**
+     * Hands an arrived patient to the bed pool of its hospital, if beds are
+     * modelled. With a LosModel the patient is scored here, so it must be
+     * called before the patient is handed to the sink; a ScoringPatientSink
+     * then passes the scored record on without scoring it again.
+     */
+    public void Admit(PatientRecord patient, double now) {
+        if (capacity == null) {
+            return;
+        }
+        if (losModel != null && !patient.isScored()) {
+            losModel.Predict(patient);
+        }
+        capacity.Arrive(patient, now);
+    }
+    /**
+     * Continues the given checkpoint instead of starting at time 0. Must be
+     * called before the experiment is started, which must then start at
+     * checkpoint.getTime().
+     */
+    public void ResumeFrom(Checkpoint checkpoint) {
+        this.resumeFrom = checkpoint;
+    }
+    /**
+     * Writes a checkpoint at each of the given simulation days.
+     *
+     * @param filePattern file name with a %d for the day, e.g.
+     * "checkpoint-%d.losk"
+     */
+    public void setCheckpoints(int[] days, String filePattern) {
+        this.checkpointDays = days.clone();
+        this.checkpointFile = filePattern;
+    }
+    /**
+     * @return minutes until the next male arrival of the first CHO
+     */
     public double getMPatientArrivalTime() {
-        return malePatientArrivalTime.getConstantValue();
+        return regions[0].NextInterArrivalTime(1);
     }
+    /**
+     * @return minutes until the next female arrival of the first CHO
+     */
     public double getFPatientArrivalTime() {
-        return femalePatientArrivalTime.getConstantValue();
+        return regions[0].NextInterArrivalTime(2);
     }
 
 	/**
@@ -479,12 +398,70 @@ Map<String, List<Double>> diagnosisList ;
 	 *    - initiate reporting
 	 *    - clean up the experiment
 	 *
-	 * @param args is an array of command-line arguments (will be ignored here)
+	 * GlobalObjects.checkpointDays selects the days at which the model state
+	 * is saved; with GlobalObjects.resumeCheckpoint the run continues from
+	 * such a file instead of starting at day 0. A resumed run must write to
+	 * a database that holds no rows of the scenario, or just those written
+	 * before the checkpoint (see CheckResumeTarget()); the run fails
+	 * otherwise.
+	 *
+	 * With GlobalObjects.losModelFile set, every patient is scored by that
+	 * LosModel before it reaches the sink.
+	 *
+	 * The report written by exp.report() includes the PatientAggregates of
+	 * the run: age by sex, hospital by fracture type and diagnosis tables next
+	 * to their input frequencies, and quantiles of the inter-arrival time.
+	 *
+	 * With GlobalObjects.bedsPerHospital above 0 or GlobalObjects.hospitalBeds
+	 * set, every patient of a hospital with beds occupies a
+	 * bed of its hospital for its (predicted) length of stay or waits for
+	 * one; the occupancy of every hospital is printed at the end.
+	 *
+	 * With GlobalObjects.simCHO set to "ALL" every CHO is simulated in this
+	 * one experiment, sharing its scheduler, trace and patient sink.
+	 *
+	 * The patient sink is chosen by the first command-line argument:
+	 *    - sqlserver (default): LOSPredictions table on the SQL Server instance
+	 *    - embedded [jdbcUrl]: LOSPredictions table in a local database file
+	 *    - bulk [jdbcUrl]: whole run loaded at the end, replacing the rows of
+	 *      its run ID (see BulkPatientLoader); SQL Server without a URL; not
+	 *      with checkpoints or resuming
+	 *    - columnar [file]: compact columnar file (see ColumnarPatientSink)
+	 *    - none: patients are only counted
+	 *
+	 * @param args is an array of command-line arguments
 	 */
 	public static void main(java.lang.String[] args) {
 
+		ScenarioConfig scenario = ScenarioConfig.FromGlobals();
+		SimulationMetrics metrics = new SimulationMetrics("EventsExample");
+		PatientSink sink = createSink(args, scenario, metrics);
+		// score LOS and discharge destination in process, ahead of the sink
+		ScoringPatientSink scoring = GlobalObjects.losModelFile == null ? null
+				: new ScoringPatientSink(LosModel.Load(java.nio.file.Paths.get(GlobalObjects.losModelFile)), sink,
+						GlobalObjects.losScoringBatch);
+		PatientSink modelSink = scoring != null ? scoring : sink;
 		// create model and experiment
-		EventsExample model = new EventsExample(null, "EventsExample", true, true);
+		EventsExample model = new EventsExample(null, "EventsExample", true, GlobalObjects.htmlTrace, scenario, modelSink);
+		model.setMetrics(metrics);
+		if (scoring != null)
+			model.setLosModel(scoring.getModel());
+		metrics.RegisterMBean();
+		java.nio.file.Path metricsLog = GlobalObjects.metricsLogFile == null ? null
+				: java.nio.file.Paths.get(GlobalObjects.metricsLogFile);
+		if (metricsLog != null)
+			metrics.StartLog(metricsLog, GlobalObjects.metricsLogPeriod);
+		Checkpoint checkpoint = GlobalObjects.resumeCheckpoint == null ? null
+				: Checkpoint.Read(java.nio.file.Paths.get(GlobalObjects.resumeCheckpoint));
+		if (checkpoint != null) {
+			model.ResumeFrom(checkpoint);
+			System.out.println("Resuming at day " + (long) (checkpoint.getTime() / ArrivalProcess.MINUTES_PER_DAY)
+					+ " after " + checkpoint.getSinkOffset() + " patients");
+		}
+		model.setCheckpoints(GlobalObjects.checkpointDays, GlobalObjects.checkpointFile);
+		if (GlobalObjects.arrivalTraceFile != null)
+			model.setTraceWriter(new TraceWriter(java.nio.file.Paths.get(GlobalObjects.arrivalTraceFile),
+					GlobalObjects.arrivalTraceSampling, GlobalObjects.arrivalTraceMaxBytes, GlobalObjects.arrivalTraceFiles));
                 // null as first parameter because it is the main model and has no mastermodel
       
                 Experiment exp = new Experiment("EventExampleExperiment", TimeUnit.SECONDS, TimeUnit.MINUTES, null);
@@ -498,16 +475,22 @@ Map<String, List<Double>> diagnosisList ;
 		model.connectToExperiment(exp);
 
 		// set experiment parameters
+		exp.setSeedGenerator(scenario.getSeed());
 		exp.setShowProgressBar(true);  // display a progress bar (or not)
-		exp.stop(new TimeInstant(365, TimeUnit.DAYS));   // set end of simulation at 1500 minutes
+		exp.stop(new TimeInstant(365 * scenario.getHorizonYears(), TimeUnit.DAYS));   // set end of simulation after the horizon
+		if (GlobalObjects.htmlTrace) {
 		exp.tracePeriod(new TimeInstant(0), new TimeInstant(100, TimeUnit.MINUTES));  // set the period of the trace
 		exp.debugPeriod(new TimeInstant(0), new TimeInstant(50, TimeUnit.MINUTES));   // and debug output
+		}
 			// ATTENTION!
 			// Don't use too long periods. Otherwise a huge HTML page will
 			// be created which crashes Netscape :-)
 
-		// start the experiment at simulation time 0.0
-		exp.start();
+		// start the experiment at simulation time 0.0, or where the checkpoint left off
+		if (checkpoint == null)
+			exp.start();
+		else
+			exp.start(new TimeInstant(checkpoint.getTime(), TimeUnit.MINUTES));
 
 		// --> now the simulation is running until it reaches its end criterion
 		// ...
@@ -519,6 +502,101 @@ Map<String, List<Double>> diagnosisList ;
 
 		// stop all threads still alive and close all output files
 		exp.finish();
-                System.out.println("Generated Count:"+GlobalObjects.patientCount);
+                model.getTraceWriter().Close();
+                // drain the write-behind queue, then send the last partial batch and commit
+                modelSink.Close();
+                if (sink instanceof AsyncPatientWriter) {
+                    AsyncPatientWriter writer = (AsyncPatientWriter) sink;
+                    System.out.println("Written Count:" + writer.getWrittenCount()
+                            + " Dropped:" + writer.getDroppedCount()
+                            + " Max Queue Depth:" + writer.getMaxQueueDepth());
+                }
+                System.out.println("Generated Count:"+model.getStatistics().getTotal());
+                if (scoring != null)
+                    System.out.print(scoring.Summary());
+                if (model.getCapacity() != null)
+                    System.out.print(model.getCapacity().Summary(model.presentTime().getTimeAsDouble(TimeUnit.MINUTES)));
+                metrics.Stop(metricsLog);
+                System.out.println(metrics.Summary());
+	}
+
+	/**
+	 * Builds the patient sink selected on the command line.
+	 */
+	static PatientSink createSink(String[] args, ScenarioConfig scenario) {
+		return createSink(args, scenario, null);
+	}
+
+	/**
+	 * Builds the patient sink selected on the command line. With metrics,
+	 * the time of every database batch is recorded and the queue depth of
+	 * the write-behind stage is published.
+	 */
+	static PatientSink createSink(String[] args, ScenarioConfig scenario, SimulationMetrics metrics) {
+		String type = args.length > 0 ? args[0] : "sqlserver";
+		DBHandler dbHandler;
+		switch (type) {
+			case "none":
+				return new CountingPatientSink();
+			case "columnar":
+				if (scenario.isAllCHOs())
+					throw new IllegalArgumentException("A columnar file holds a single CHO, use a database sink for all CHOs");
+				if (scenario.getHorizonYears() > 1)
+					throw new IllegalArgumentException("A columnar file holds a single SimYear, use a database sink for a horizon of several years");
+				String file = args.length > 1 ? args[1] : "LOSPredictions.losc";
+				return new ColumnarPatientSink(java.nio.file.Paths.get(file), scenario.getCHO(),
+						scenario.getSimYearAsInt(), 65536);
+			case "bulk":
+				// staged rows only reach the table at Close(), and a load
+				// replaces the rows of its run ID: a resumed run would drop
+				// every patient before the checkpoint
+				if (GlobalObjects.checkpointDays.length > 0 || GlobalObjects.resumeCheckpoint != null)
+					throw new IllegalArgumentException("The bulk sink does not support checkpoints or resuming, use embedded or sqlserver");
+				String runID = GlobalObjects.runID != null ? GlobalObjects.runID : scenario.getName();
+				return args.length > 1
+						? BulkPatientLoader.ForEmbedded(args[1], runID, GlobalObjects.dbBatchSize)
+						: BulkPatientLoader.ForSqlServer("Predictions", runID, GlobalObjects.dbBatchSize);
+			case "embedded":
+				String url = args.length > 1 ? args[1] : "jdbc:h2:./Predictions";
+				dbHandler = DBHandler.ForEmbedded(url, GlobalObjects.dbBatchSize, GlobalObjects.dbCommitPerBatch);
+				break;
+			case "sqlserver":
+				dbHandler = DBHandler.ForSqlServer("Predictions", GlobalObjects.dbBatchSize, GlobalObjects.dbCommitPerBatch);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown patient sink: " + type);
+		}
+		if (GlobalObjects.resumeCheckpoint != null)
+			CheckResumeTarget(dbHandler, scenario, Checkpoint.Read(java.nio.file.Paths.get(GlobalObjects.resumeCheckpoint)));
+		if (metrics == null)
+			return new AsyncPatientWriter(dbHandler, GlobalObjects.writerQueueCapacity,
+					AsyncPatientWriter.OverflowPolicy.BLOCK);
+		dbHandler.setBatchLatency(metrics.getBatchLatency());
+		AsyncPatientWriter writer = new AsyncPatientWriter(dbHandler, GlobalObjects.writerQueueCapacity,
+				AsyncPatientWriter.OverflowPolicy.BLOCK);
+		metrics.setWriter(writer);
+		return writer;
+	}
+
+	/**
+	 * A resumed run writes only the patients after the checkpoint. Its
+	 * table must therefore hold either exactly the getSinkOffset() rows the
+	 * original run wrote before the checkpoint, or no rows of the scenario
+	 * at all (a separate database for the rest of the run). Otherwise the
+	 * rows the original run wrote after the checkpoint would be stored a
+	 * second time.
+	 *
+	 * @throws IllegalStateException if the table holds any other number of
+	 * rows of the scenario's CHOs and years; the handler is closed
+	 */
+	static void CheckResumeTarget(DBHandler dbHandler, ScenarioConfig scenario, Checkpoint checkpoint) {
+		long rows = dbHandler.CountPatients(scenario.isAllCHOs() ? null : scenario.getCHO(),
+				scenario.getSimYearAsInt(), scenario.getSimYearAsInt() + scenario.getHorizonYears() - 1);
+		if (rows != 0 && rows != checkpoint.getSinkOffset()) {
+			dbHandler.Close();
+			throw new IllegalStateException("LOSPredictions holds " + rows + " rows of " + scenario.getCHO()
+					+ ", the checkpoint expects " + checkpoint.getSinkOffset()
+					+ ": delete the rows written after the checkpoint or resume into another database");
+		}
 	}
 } /* end of model class */
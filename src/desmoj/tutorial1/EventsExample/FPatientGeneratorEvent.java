@@ -11,8 +11,22 @@ import desmoj.core.simulator.TimeSpan;
 import java.util.concurrent.TimeUnit;
 
 public class FPatientGeneratorEvent extends ExternalEvent{
-        public FPatientGeneratorEvent(Model owner, String name, boolean showInTrace) {
+    private final ChoRegion region;
+
+    /**
+     * Creates the generator of the first (in single-CHO mode the only) CHO
+     * of the model.
+     */
+    public FPatientGeneratorEvent(Model owner, String name, boolean showInTrace) {
+        this(owner, name, showInTrace, ((EventsExample) owner).getRegions().get(0));
+    }
+
+    /**
+     * Creates the generator of the female patients of the given CHO.
+     */
+    public FPatientGeneratorEvent(Model owner, String name, boolean showInTrace, ChoRegion region) {
         super(owner, name, showInTrace);
+        this.region = region;
     }
 
     /**
@@ -21,29 +35,45 @@ public class FPatientGeneratorEvent extends ExternalEvent{
     public void eventRoutine() {
         // get a reference to the model
         EventsExample model = (EventsExample) getModel();
+        model.getMetrics().EventProcessed(presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+        if (model.isLightweight()) {
+            // cohort generation: no entity and no arrival event, the arrival
+            // is counted right here
+            model.ScheduleArrival(this, region, 2);
+            PatientRecord patient = model.SamplePatient(region, 2);
+            model.getTraceWriter().Arrival(presentTime().getTimeAsDouble(TimeUnit.MINUTES), patient);
+            model.getStatistics().Record(patient);
+            model.getMetrics().PatientGenerated(region, patient.Sex);
+            model.Admit(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+            model.getPatientSink().InsertPatient(patient);
+            model.getAggregates().Record(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+            return;
+        }
         // create a new truck
-        Patient femalePatient = new Patient(model, "Female Patient", true);
+        Patient femalePatient = new Patient(model, "Female Patient", model.traceIsOn());
         // create a new truck arrival event
-        PaientArrivalEvent truckArrival = new PaientArrivalEvent(model, "Female Patient ArrivalEvent", true);
+        PaientArrivalEvent truckArrival = new PaientArrivalEvent(model, "Female Patient ArrivalEvent", model.traceIsOn());
         // and schedule it for the current point in time
         truckArrival.schedule(femalePatient, new TimeSpan(0.0));
         // schedule this truck generator again for the next truck arrival time
-        schedule(new TimeSpan(model.getFPatientArrivalTime(), TimeUnit.MINUTES));
+        model.ScheduleArrival(this, region, 2);
        //  System.out.println("New Female Patient");
         //Setting patient properties
-        femalePatient.Hospital = model.SampleHospital();
+        femalePatient.Hospital = region.SampleHospital();
         femalePatient.Sex = 2;// 2-> Female
-        femalePatient.ResID = model.SampleResidence();
+        femalePatient.ResID = region.SampleResidence();
         femalePatient.Age = model.SampleAge();
-        int diagID = model.SampleDiagnosis();
-        femalePatient.Diag1 = model.diagnosisList.entrySet().stream()
-                .filter(x -> x.getValue().get(0) == diagID)
-                .map(x -> x.getKey()).reduce("", String::concat);
+        femalePatient.Diag1 = model.SampleDiagnosisCode();
         femalePatient.FracType = model.SampleFracType();
         femalePatient.Fragility = model.SampleFragility();
-        femalePatient.CHO = GlobalObjects.simCHO;
-        //Inserting patient into DB
-        GlobalObjects.dbHandler.InsertPatient(femalePatient);
+        femalePatient.CHO = region.getCHO();
+        //Handing patient over to the sink
+        PatientRecord patient = new PatientRecord(femalePatient, model.getPresentSimYear());
+        model.getTraceWriter().Arrival(presentTime().getTimeAsDouble(TimeUnit.MINUTES), patient);
+        model.getMetrics().PatientGenerated(region, patient.Sex);
+        model.Admit(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+        model.getPatientSink().InsertPatient(patient);
+        model.getAggregates().Record(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
 
     }
 }
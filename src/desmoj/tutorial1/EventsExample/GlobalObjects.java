@@ -11,10 +11,38 @@ package desmoj.tutorial1.EventsExample;
  */
 public class GlobalObjects {
     public static String simYear="2026";
-    public static String simCHO="CHO4";
-   public static final  DBHandler dbHandler=new DBHandler("Predictions");
-
-    public static long patientCount = 0;
+    public static String simCHO="CHO4";// "ALL" -> every CHO in one experiment
+    public static long seed = 979;// seed generator of the experiment
+    public static int dbBatchSize = 1000;// patients per JDBC batch
+    public static boolean dbCommitPerBatch = true;// false -> one commit per run
+    public static int dbPoolSize = 4;// connections per DBHandler pool; with one commit per run at least the number of inserting threads
+    public static ArrivalProcess.Mode arrivalMode = ArrivalProcess.Mode.CONSTANT;
+    public static int horizonYears = 1;// simulated years, starting with simYear
+    // relative arrival intensities of the NHPP arrival mode (mean 1)
+    public static double[] monthlyArrivalFactors = {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1};
+    public static double[] weekdayArrivalFactors = {1, 1, 1, 1, 1, 1, 1};
+    public static boolean lightweightPatients = false;// plain records instead of entities and arrival events
+    public static boolean htmlTrace = true;// DESMO-J HTML trace and debug output
+    public static String arrivalTraceFile = null;// NDJSON arrival trace, null -> off
+    public static int arrivalTraceSampling = 1;// trace one arrival in N
+    public static long arrivalTraceMaxBytes = 64L << 20;// rotate the trace file at 64 MB
+    public static int arrivalTraceFiles = 4;// trace files kept after rotation
+    public static String metricsLogFile = null;// periodic metrics log, null -> off
+    public static long metricsLogPeriod = 10;// seconds between metrics log lines
+    public static int writerQueueCapacity = 10000;// patients buffered between events and DB
+    public static String runID = null;// LOSPredictions.RunID of bulk loads, null -> scenario name
+    public static int[] checkpointDays = {};// simulation days at which the model state is saved, e.g. {365, 730}
+    public static String checkpointFile = "checkpoint-%d.losk";// %d -> day
+    public static String resumeCheckpoint = null;// checkpoint to continue from, null -> start at day 0; the database must hold no rows of the scenario or only those before the checkpoint
+    public static String losModelFile = null;// exported LOS/destination model (see LosModel), null -> no scoring
+    public static int losScoringBatch = 256;// patients scored together
+    public static String scenarioTablesFile = null;// input tables, null -> built-in scenario-tables.txt
+    public static int bedsPerHospital = 0;// beds of every hospital, 0 -> only the hospitals in hospitalBeds are modelled
+    public static java.util.Map<Integer, Integer> hospitalBeds = new java.util.HashMap<>();// Hospital ID -> beds, overrides bedsPerHospital; both empty -> beds are not modelled
+    public static double meanLosDays = 12;// mean length of stay without a LOS model
+    public static boolean dischargeCalendar = true;// pending discharges in a CalendarQueue, false -> one event each
+    public static String experimentOutputDir = "experiments";// DESMO-J files of ScenarioRunner and MarginalValidator runs
+    public static boolean scenarioReports = false;// DESMO-J report of every ScenarioRunner scenario
 
 
 }
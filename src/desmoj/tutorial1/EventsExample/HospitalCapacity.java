@@ -0,0 +1,209 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.TimeInstant;
+import desmoj.core.simulator.TimeSpan;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bed capacity of the hospitals of an EventsExample.
+ *
+ * Every arriving patient is admitted to a bed of the BedPool of the
+ * patient's Hospital ID, or waits in its queue until a DischargeEvent frees
+ * a bed. The length of stay is the predicted one of a scored patient,
+ * otherwise an exponential draw with the configured mean. Bed pools
+ * are kept in an array indexed by Hospital ID, so an arrival costs an array
+ * access, a queue operation and at most one discharge.
+ *
+ * Pending discharges grow with the inpatient census. By default they are
+ * kept in a CalendarQueue behind a single DischargeEvent that is always
+ * scheduled for the earliest one, so the DESMO-J event list holds one
+ * discharge event however many patients are in a bed. Without the calendar
+ * every inpatient gets its own DischargeEvent on the event list.
+ */
+public final class HospitalCapacity {
+
+    private final EventsExample model;
+    private final BedPool[] pools;// by Hospital ID, null for unknown hospitals
+    private final List<BedPool> poolList = new ArrayList<>();
+    private final double meanLosMinutes;
+    private final RandomStream random;
+    private final CalendarQueue<BedPool.Inpatient> discharges;// null -> one DischargeEvent per inpatient
+    private final DischargeEvent dischargeEvent;
+    private double dischargeTime = Double.POSITIVE_INFINITY;// time dischargeEvent is scheduled for
+    private boolean discharging = false;
+    private int inpatients = 0;
+    private int maxInpatients = 0;
+
+    /**
+     * @param hospitals Hospital IDs of all simulated CHOs
+     * @param defaultBeds beds of a hospital without an entry in beds; with
+     * 0 such hospitals are not modelled
+     * @param beds number of beds per Hospital ID
+     * @param meanLosDays mean of the exponential length of stay of patients
+     * that are not scored
+     * @param seed seed of the length of stay stream
+     * @param calendar whether pending discharges are kept in a
+     * CalendarQueue instead of the event list
+     */
+    HospitalCapacity(EventsExample model, int[] hospitals, int defaultBeds, Map<Integer, Integer> beds,
+            double meanLosDays, long seed, boolean calendar) {
+        this.model = model;
+        int maxID = 0;
+        for (int hospital : hospitals) {
+            maxID = Math.max(maxID, hospital);
+        }
+        this.pools = new BedPool[maxID + 1];
+        for (int hospital : hospitals) {
+            if (pools[hospital] == null && (defaultBeds > 0 || beds.containsKey(hospital))) {
+                pools[hospital] = new BedPool(hospital, beds.getOrDefault(hospital, defaultBeds));
+                poolList.add(pools[hospital]);
+            }
+        }
+        this.meanLosMinutes = meanLosDays * ArrivalProcess.MINUTES_PER_DAY;
+        this.random = new RandomStream(seed);
+        int totalBeds = 0;
+        for (BedPool pool : poolList) {
+            totalBeds += pool.getCapacity();
+        }
+        this.discharges = calendar ? new CalendarQueue<>(totalBeds) : null;
+        this.dischargeEvent = calendar
+                ? new DischargeEvent(model, "Discharges", model.traceIsOn() && !model.isLightweight()) : null;
+    }
+
+    /**
+     * Admits the patient or puts the patient in the queue of the hospital.
+     * Patients of a hospital without a bed pool are ignored.
+     *
+     * @param now the present simulation time in minutes
+     */
+    public void Arrive(PatientRecord patient, double now) {
+        BedPool pool = patient.Hospital < pools.length ? pools[patient.Hospital] : null;
+        if (pool == null) {
+            return;
+        }
+        BedPool.Inpatient inpatient = new BedPool.Inpatient(patient, now, LengthOfStay(patient));
+        model.getAggregates().RecordStay(inpatient.lengthOfStay / ArrivalProcess.MINUTES_PER_DAY);
+        if (pool.Arrive(inpatient, now)) {
+            ScheduleDischarge(pool, inpatient, now);
+        }
+    }
+
+    /**
+     * Called by the DischargeEvent of the given inpatient.
+     */
+    void Discharged(BedPool pool, BedPool.Inpatient inpatient, double now) {
+        inpatients--;
+        BedPool.Inpatient next = pool.Discharge(now);
+        if (next != null) {
+            ScheduleDischarge(pool, next, now);
+        }
+    }
+
+    /**
+     * Called by the calendar DischargeEvent: discharges every inpatient due
+     * by now and schedules the event for the next one.
+     */
+    void DischargeDue(double now) {
+        // the event fires at the instant it was scheduled for, which the
+        // discharge times in the calendar are rounded to
+        double due = Math.max(now, dischargeTime);
+        dischargeTime = Double.POSITIVE_INFINITY;
+        discharging = true;
+        while (discharges.peekTime() <= due) {
+            BedPool.Inpatient inpatient = discharges.poll();
+            Discharged(pools[inpatient.patient.Hospital], inpatient, now);
+        }
+        discharging = false;
+        ScheduleDischargeEvent();
+    }
+
+    /**
+     * @return the bed pool of the given Hospital ID, or null
+     */
+    public BedPool getPool(int hospital) {
+        return hospital < pools.length ? pools[hospital] : null;
+    }
+
+    public List<BedPool> getPools() {
+        return Collections.unmodifiableList(poolList);
+    }
+
+    /** @return number of patients in a bed across all hospitals */
+    public int getInpatients() {
+        return inpatients;
+    }
+
+    public int getMaxInpatients() {
+        return maxInpatients;
+    }
+
+    /**
+     * @return one line per hospital with its beds, admissions, occupancy
+     * and waiting patients up to the given time in minutes
+     */
+    public String Summary(double now) {
+        StringBuilder summary = new StringBuilder(String.format("%8s %6s %10s %8s %9s %8s %9s %10s %10s%n",
+                "Hospital", "Beds", "Admitted", "Queued", "MeanOcc", "MaxOcc", "MeanQueue", "MaxQueue", "MeanWaitH"));
+        for (BedPool pool : poolList) {
+            summary.append(String.format("%8d %6d %10d %8d %9.1f %8d %9.2f %10d %10.1f%n", pool.getHospital(),
+                    pool.getCapacity(), pool.getAdmissions(), pool.getQueued(), pool.getMeanOccupied(now),
+                    pool.getMaxOccupied(), pool.getMeanWaiting(now), pool.getMaxWaiting(), pool.getMeanWait() / 60.0));
+        }
+        summary.append("Max inpatients: ").append(maxInpatients).append(String.format("%n"));
+        return summary.toString();
+    }
+
+    private void ScheduleDischarge(BedPool pool, BedPool.Inpatient inpatient, double now) {
+        inpatients++;
+        maxInpatients = Math.max(maxInpatients, inpatients);
+        if (discharges == null) {
+            new DischargeEvent(model, "Discharge", model.traceIsOn() && !model.isLightweight(), pool, inpatient)
+                    .schedule(new TimeSpan(inpatient.lengthOfStay, TimeUnit.MINUTES));
+            return;
+        }
+        // keyed by the instant DESMO-J would schedule, i.e. rounded to the
+        // epsilon of the experiment, so the calendar event never fires
+        // before the discharges it stands for
+        TimeInstant due = new TimeInstant(now + inpatient.lengthOfStay, TimeUnit.MINUTES);
+        discharges.add(due.getTimeAsDouble(TimeUnit.MINUTES), inpatient);
+        if (!discharging) {
+            ScheduleDischargeEvent();
+        }
+    }
+
+    /**
+     * Moves the calendar DischargeEvent to the earliest pending discharge
+     * if that is earlier than its present time.
+     */
+    private void ScheduleDischargeEvent() {
+        double earliest = discharges.peekTime();
+        if (earliest >= dischargeTime) {
+            return;
+        }
+        if (dischargeEvent.isScheduled()) {
+            dischargeEvent.cancel();
+        }
+        TimeInstant instant = new TimeInstant(earliest, TimeUnit.MINUTES);
+        dischargeEvent.schedule(instant);
+        dischargeTime = instant.getTimeAsDouble(TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return number of discharges waiting in the calendar, 0 without one
+     */
+    public int getPendingDischarges() {
+        return discharges == null ? 0 : discharges.size();
+    }
+
+    private double LengthOfStay(PatientRecord patient) {
+        if (patient.isScored()) {
+            return Math.max(0, patient.getPredictedLOS()) * ArrivalProcess.MINUTES_PER_DAY;
+        }
+        return random.NextExponential(1.0 / meanLosMinutes);
+    }
+
+}
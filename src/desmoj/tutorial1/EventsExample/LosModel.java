@@ -0,0 +1,329 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An exported length of stay and discharge destination model that scores
+ * patients in process, in micro-batches over primitive feature columns.
+ *
+ * The model is additive: the length of stay (in days, optionally through a
+ * log link) and the logit of every discharge destination are an intercept
+ * plus one term per feature. A feature term is either a slope (numeric use,
+ * e.g. Age) or a weight per value (categorical use, e.g. Hospital or Diag1);
+ * values without a weight add nothing. This covers the linear regression
+ * and multinomial logistic models of the ML step, and one-hot encoded
+ * exports of other models. The predicted destination is the one with the
+ * highest logit.
+ *
+ * File format, one entry per line, '#' starts a comment:
+ * <pre>
+ * version 1
+ * destinations Home Rehabilitation NursingHome    # classes 1, 2, 3
+ * loslink log                                     # or identity (default)
+ * los intercept 2.1
+ * los Age * 0.01                                  # slope
+ * los Hospital 300 0.15                           # weight of one value
+ * Rehabilitation intercept -0.4
+ * Rehabilitation Diag1 S7200 0.3
+ * </pre>
+ * Features: Hospital, Sex, ResID, Age, Diag1, FracType, Fragility.
+ */
+public final class LosModel {
+
+    public static final int FORMAT_VERSION = 1;
+
+    /** feature columns, in the order of the arrays passed to Score() */
+    public static final String[] FEATURES = {"Hospital", "Sex", "ResID", "Age", "Diag1", "FracType", "Fragility"};
+    public static final int HOSPITAL = 0;
+    public static final int SEX = 1;
+    public static final int RESID = 2;
+    public static final int AGE = 3;
+    public static final int DIAG1 = 4;
+    public static final int FRACTYPE = 5;
+    public static final int FRAGILITY = 6;
+
+    /**
+     * The weights of one feature in one output, as a dense table over the
+     * range of weighted values so that a lookup is an array access.
+     */
+    private static final class Term {
+
+        final double slope;
+        final int offset;
+        final double[] weights;
+
+        Term(double slope, Map<Integer, Double> weights) {
+            this.slope = slope;
+            if (weights.isEmpty()) {
+                this.offset = 0;
+                this.weights = new double[0];
+                return;
+            }
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int value : weights.keySet()) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            this.offset = min;
+            this.weights = new double[max - min + 1];
+            for (Map.Entry<Integer, Double> weight : weights.entrySet()) {
+                this.weights[weight.getKey() - min] = weight.getValue();
+            }
+        }
+
+        double Value(int value) {
+            int index = value - offset;
+            return slope * value + (index >= 0 && index < weights.length ? weights[index] : 0);
+        }
+
+        void Add(int n, int[] values, double[] scores) {
+            if (slope != 0) {
+                for (int i = 0; i < n; i++) {
+                    scores[i] += slope * values[i];
+                }
+            }
+            if (weights.length > 0) {
+                for (int i = 0; i < n; i++) {
+                    int index = values[i] - offset;
+                    if (index >= 0 && index < weights.length) {
+                        scores[i] += weights[index];
+                    }
+                }
+            }
+        }
+    }
+
+    private final String[] destinations;
+    private final boolean logLink;
+    private final double[] intercepts;// per output: 0 LOS, then one per destination
+    private final Term[][] terms;// [output][feature], null if the feature is unused
+    private final Map<String, Integer> diagnosisIndex;// Diag1 code -> categorical value
+
+    private LosModel(String[] destinations, boolean logLink, double[] intercepts, Term[][] terms,
+            Map<String, Integer> diagnosisIndex) {
+        this.destinations = destinations;
+        this.logLink = logLink;
+        this.intercepts = intercepts;
+        this.terms = terms;
+        this.diagnosisIndex = diagnosisIndex;
+    }
+
+    /**
+     * @throws IllegalArgumentException with the line number if the file is
+     * malformed
+     */
+    public static LosModel Load(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return Parse(reader, file.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static LosModel Parse(BufferedReader reader, String source) throws IOException {
+        int version = -1;
+        List<String> outputs = new ArrayList<>();
+        outputs.add("los");
+        boolean logLink = false;
+        Map<String, Integer> diagnosisIndex = new HashMap<>();
+        // [output] -> intercept, slopes and categorical weights per feature
+        Map<Integer, Double> intercepts = new HashMap<>();
+        Map<Integer, double[]> slopes = new HashMap<>();
+        Map<Integer, List<Map<Integer, Double>>> weights = new HashMap<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            String[] f = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+            if (f[0].isEmpty()) {
+                continue;
+            }
+            String at = source + ":" + lineNumber + ": ";
+            try {
+                if (version < 0) {
+                    if (!f[0].equals("version") || f.length != 2) {
+                        throw new IllegalArgumentException(at + "Expected the format version first");
+                    }
+                    version = Integer.parseInt(f[1]);
+                    if (version != FORMAT_VERSION) {
+                        throw new IllegalArgumentException(at + "Unsupported format version " + version);
+                    }
+                } else if (f[0].equals("destinations")) {
+                    if (outputs.size() > 1 || f.length < 2) {
+                        throw new IllegalArgumentException(at + "Expected one destinations line with names");
+                    }
+                    outputs.addAll(Arrays.asList(f).subList(1, f.length));
+                } else if (f[0].equals("loslink") && f.length == 2) {
+                    logLink = f[1].equals("log");
+                } else {
+                    int output = outputs.indexOf(f[0]);
+                    if (output < 0) {
+                        throw new IllegalArgumentException(at + "Unknown output " + f[0]);
+                    }
+                    if (f.length == 3 && f[1].equals("intercept")) {
+                        intercepts.put(output, Double.parseDouble(f[2]));
+                        continue;
+                    }
+                    int feature = Arrays.asList(FEATURES).indexOf(f.length == 4 ? f[1] : "");
+                    if (feature < 0) {
+                        throw new IllegalArgumentException(at + "Expected <output> <feature> <value|*> <weight>");
+                    }
+                    double weight = Double.parseDouble(f[3]);
+                    if (f[2].equals("*")) {
+                        slopes.computeIfAbsent(output, k -> new double[FEATURES.length])[feature] = weight;
+                    } else {
+                        int value;
+                        if (feature == DIAG1) {
+                            String code = f[2].intern();
+                            Integer index = diagnosisIndex.get(code);
+                            if (index == null) {
+                                index = diagnosisIndex.size();
+                                diagnosisIndex.put(code, index);
+                            }
+                            value = index;
+                        } else {
+                            value = Integer.parseInt(f[2]);
+                        }
+                        List<Map<Integer, Double>> outputWeights = weights.computeIfAbsent(output, k -> {
+                            List<Map<Integer, Double>> list = new ArrayList<>();
+                            for (int i = 0; i < FEATURES.length; i++) {
+                                list.add(new TreeMap<>());
+                            }
+                            return list;
+                        });
+                        outputWeights.get(feature).put(value, weight);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(at + "Not a number: " + e.getMessage());
+            }
+        }
+        if (version < 0 || outputs.size() < 2) {
+            throw new IllegalArgumentException(source + ": expected a version and a destinations line");
+        }
+        double[] interceptArray = new double[outputs.size()];
+        Term[][] terms = new Term[outputs.size()][FEATURES.length];
+        for (int output = 0; output < outputs.size(); output++) {
+            interceptArray[output] = intercepts.getOrDefault(output, 0.0);
+            double[] outputSlopes = slopes.get(output);
+            List<Map<Integer, Double>> outputWeights = weights.get(output);
+            for (int feature = 0; feature < FEATURES.length; feature++) {
+                double slope = outputSlopes == null ? 0 : outputSlopes[feature];
+                Map<Integer, Double> featureWeights = outputWeights == null
+                        ? new TreeMap<>() : outputWeights.get(feature);
+                if (slope != 0 || !featureWeights.isEmpty()) {
+                    terms[output][feature] = new Term(slope, featureWeights);
+                }
+            }
+        }
+        List<String> names = outputs.subList(1, outputs.size());
+        return new LosModel(names.toArray(new String[0]), logLink, interceptArray, terms, diagnosisIndex);
+    }
+
+    /**
+     * @return the categorical value of a Diag1 code in the Diag1 feature
+     * column; codes the model has no weight for give -1
+     */
+    public int DiagnosisValue(String diag1) {
+        Integer value = diagnosisIndex.get(diag1);
+        return value == null ? -1 : value;
+    }
+
+    /**
+     * Scores the first n patients of the given feature columns.
+     *
+     * @param features one column per entry of FEATURES, Diag1 encoded with
+     * DiagnosisValue()
+     * @param los receives the predicted length of stay in days
+     * @param destination receives the predicted destination, from 1
+     * @param scratch at least n doubles, reused between calls
+     * @param best at least n doubles, reused between calls
+     */
+    public void Score(int n, int[][] features, double[] los, int[] destination, double[] scratch, double[] best) {
+        Accumulate(0, n, features, los);
+        if (logLink) {
+            for (int i = 0; i < n; i++) {
+                los[i] = Math.exp(los[i]);
+            }
+        }
+        Arrays.fill(best, 0, n, Double.NEGATIVE_INFINITY);
+        for (int output = 1; output < intercepts.length; output++) {
+            Accumulate(output, n, features, scratch);
+            for (int i = 0; i < n; i++) {
+                if (scratch[i] > best[i]) {
+                    best[i] = scratch[i];
+                    destination[i] = output;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores a single patient, for callers that need the predictions at the
+     * time of the arrival, and stores them in the record.
+     */
+    public void Predict(PatientRecord patient) {
+        double los = Score(0, patient);
+        int destination = 1;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int output = 1; output < intercepts.length; output++) {
+            double score = Score(output, patient);
+            if (score > best) {
+                best = score;
+                destination = output;
+            }
+        }
+        patient.SetPrediction(logLink ? Math.exp(los) : los, destination);
+    }
+
+    /**
+     * @return the destination names, index 0 is destination 1
+     */
+    public String[] getDestinations() {
+        return destinations.clone();
+    }
+
+    /**
+     * @return the name of the given destination, from 1
+     */
+    public String getDestination(int destination) {
+        return destination == PatientRecord.NOT_SCORED ? "NotScored" : destinations[destination - 1];
+    }
+
+    private double Score(int output, PatientRecord patient) {
+        Term[] t = terms[output];
+        double score = intercepts[output];
+        score += t[HOSPITAL] == null ? 0 : t[HOSPITAL].Value(patient.Hospital);
+        score += t[SEX] == null ? 0 : t[SEX].Value(patient.Sex);
+        score += t[RESID] == null ? 0 : t[RESID].Value(patient.ResID);
+        score += t[AGE] == null ? 0 : t[AGE].Value(patient.Age);
+        score += t[DIAG1] == null ? 0 : t[DIAG1].Value(DiagnosisValue(patient.Diag1));
+        score += t[FRACTYPE] == null ? 0 : t[FRACTYPE].Value(patient.FracType);
+        score += t[FRAGILITY] == null ? 0 : t[FRAGILITY].Value(patient.Fragility);
+        return score;
+    }
+
+    private void Accumulate(int output, int n, int[][] features, double[] scores) {
+        Arrays.fill(scores, 0, n, intercepts[output]);
+        Term[] outputTerms = terms[output];
+        for (int feature = 0; feature < outputTerms.length; feature++) {
+            if (outputTerms[feature] != null) {
+                outputTerms[feature].Add(n, features[feature], scores);
+            }
+        }
+    }
+
+}
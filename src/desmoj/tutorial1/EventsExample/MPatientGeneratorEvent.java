@@ -1,7 +1,6 @@
 package desmoj.tutorial1.EventsExample;
 
 import desmoj.core.simulator.*;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -17,8 +16,22 @@ import java.util.concurrent.TimeUnit;
  */
 public class MPatientGeneratorEvent extends ExternalEvent {
 
+    private final ChoRegion region;
+
+    /**
+     * Creates the generator of the first (in single-CHO mode the only) CHO
+     * of the model.
+     */
     public MPatientGeneratorEvent(Model owner, String name, boolean showInTrace) {
+        this(owner, name, showInTrace, ((EventsExample) owner).getRegions().get(0));
+    }
+
+    /**
+     * Creates the generator of the male patients of the given CHO.
+     */
+    public MPatientGeneratorEvent(Model owner, String name, boolean showInTrace, ChoRegion region) {
         super(owner, name, showInTrace);
+        this.region = region;
     }
 
     /**
@@ -30,30 +43,46 @@ public class MPatientGeneratorEvent extends ExternalEvent {
     public void eventRoutine() {
         // get a reference to the model
         EventsExample model = (EventsExample) getModel();
+        model.getMetrics().EventProcessed(presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+        if (model.isLightweight()) {
+            // cohort generation: no entity and no arrival event, the arrival
+            // is counted right here
+            model.ScheduleArrival(this, region, 1);
+            PatientRecord patient = model.SamplePatient(region, 1);
+            model.getTraceWriter().Arrival(presentTime().getTimeAsDouble(TimeUnit.MINUTES), patient);
+            model.getStatistics().Record(patient);
+            model.getMetrics().PatientGenerated(region, patient.Sex);
+            model.Admit(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+            model.getPatientSink().InsertPatient(patient);
+            model.getAggregates().Record(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+            return;
+        }
         // create a new truck
-        Patient malePatient = new Patient(model, "Male Patient", true);
+        Patient malePatient = new Patient(model, "Male Patient", model.traceIsOn());
         // create a new truck arrival event
-        PaientArrivalEvent truckArrival = new PaientArrivalEvent(model, "Male Patient ArrivalEvent", true);
+        PaientArrivalEvent truckArrival = new PaientArrivalEvent(model, "Male Patient ArrivalEvent", model.traceIsOn());
         // and schedule it for the current point in time
         truckArrival.schedule(malePatient, new TimeSpan(0.0));
         // schedule this truck generator again for the next truck arrival time
-        schedule(new TimeSpan(model.getMPatientArrivalTime(), TimeUnit.MINUTES));
+        model.ScheduleArrival(this, region, 1);
         //System.out.println("New Male Patient");
         //Setting patient properties
-       malePatient.Hospital = model.SampleHospital();
+       malePatient.Hospital = region.SampleHospital();
        malePatient.Sex = 1;// 1-> Male
-        malePatient.ResID = model.SampleResidence();
+        malePatient.ResID = region.SampleResidence();
         malePatient.Age = model.SampleAge();
-        int diagID = model.SampleDiagnosis();
-        malePatient.Diag1 = model.diagnosisList.entrySet().stream()
-                .filter(x -> x.getValue().get(0) == diagID)
-                .map(x -> x.getKey()).reduce("", String::concat);
+        malePatient.Diag1 = model.SampleDiagnosisCode();
         malePatient.FracType = model.SampleFracType();
         malePatient.Fragility = model.SampleFragility();
-        malePatient.CHO = GlobalObjects.simCHO;
+        malePatient.CHO = region.getCHO();
            
-    //Inserting patient into DB
-    GlobalObjects.dbHandler.InsertPatient(malePatient);
+    //Handing patient over to the sink
+    PatientRecord patient = new PatientRecord(malePatient, model.getPresentSimYear());
+    model.getTraceWriter().Arrival(presentTime().getTimeAsDouble(TimeUnit.MINUTES), patient);
+    model.getMetrics().PatientGenerated(region, patient.Sex);
+    model.Admit(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
+    model.getPatientSink().InsertPatient(patient);
+    model.getAggregates().Record(patient, presentTime().getTimeAsDouble(TimeUnit.MINUTES));
     //    GlobalObjects.dbHandler.ExecuteCmd("Insert into LOSPredictions (HospID,Sex) values(910,1)");
     }
 }
@@ -0,0 +1,436 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.Experiment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that the Sample*() methods of EventsExample reproduce the
+ * frequency tables they are built from: age, fragility, fracture type,
+ * diagnosis, and the hospital and residence tables of every CHO.
+ *
+ * Every worker thread builds its own all-CHOs model with a seed derived from
+ * the base seed (see ReplicationRunner.ReplicationSeed) and draws its share
+ * of the samples of every table into dense count arrays. The merged counts
+ * are tested against the input frequencies with Pearson's chi-square test,
+ * cells expected below 5 being pooled, and the age table, whose values are
+ * ordered, also with the Kolmogorov-Smirnov distance. A table drifts if a
+ * test rejects at the significance level divided by the number of tests
+ * (Bonferroni), or if a value outside the table is sampled at all.
+ *
+ * Run it after changing a sampler or a scenario tables file: the tables
+ * are those of GlobalObjects.scenarioTablesFile, like in a simulation run.
+ * The sampling models write no report; the files DESMO-J opens for their
+ * experiments go to GlobalObjects.experimentOutputDir.
+ */
+public class MarginalValidator {
+
+    /**
+     * The outcome of the tests of one table.
+     */
+    public static final class Result {
+
+        private final String table;
+        private final long samples;
+        private final int categories;
+        private final long unexpected;
+        private final double chiSquare;
+        private final int degreesOfFreedom;
+        private final double pValue;
+        private final double ksDistance;// NaN for unordered tables
+        private final double ksCritical;
+        private final double maxDeviation;
+        private final boolean drift;
+
+        Result(String table, long samples, int categories, long unexpected, double chiSquare, int degreesOfFreedom,
+                double pValue, double ksDistance, double ksCritical, double maxDeviation, boolean drift) {
+            this.table = table;
+            this.samples = samples;
+            this.categories = categories;
+            this.unexpected = unexpected;
+            this.chiSquare = chiSquare;
+            this.degreesOfFreedom = degreesOfFreedom;
+            this.pValue = pValue;
+            this.ksDistance = ksDistance;
+            this.ksCritical = ksCritical;
+            this.maxDeviation = maxDeviation;
+            this.drift = drift;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        /** @return number of samples with a value that is not in the table */
+        public long getUnexpected() {
+            return unexpected;
+        }
+
+        public double getChiSquare() {
+            return chiSquare;
+        }
+
+        public int getDegreesOfFreedom() {
+            return degreesOfFreedom;
+        }
+
+        public double getPValue() {
+            return pValue;
+        }
+
+        /** @return the Kolmogorov-Smirnov distance, NaN for unordered tables */
+        public double getKsDistance() {
+            return ksDistance;
+        }
+
+        /** @return largest difference of a sampled proportion and its frequency */
+        public double getMaxDeviation() {
+            return maxDeviation;
+        }
+
+        public boolean isDrift() {
+            return drift;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-22s %10d %5d %8.1f %4d %9.2e %8s %8s %8.4f %8d  %s", table, samples, categories,
+                    chiSquare, degreesOfFreedom, pValue,
+                    Double.isNaN(ksDistance) ? "-" : String.format("%.5f", ksDistance),
+                    Double.isNaN(ksDistance) ? "-" : String.format("%.5f", ksCritical),
+                    100 * maxDeviation, unexpected, drift ? "DRIFT" : "ok");
+        }
+    }
+
+    /**
+     * Counts of the sampled values of one frequency table, dense over the
+     * range of its values; the last slot counts values outside the table.
+     */
+    private static final class Tally {
+
+        final String name;
+        final ScenarioTables.Frequencies frequencies;
+        final boolean ordered;
+        final int offset;
+        final int[] index;// value - offset -> entry of the table, -1 if none
+        final long[] counts;
+
+        Tally(String name, ScenarioTables.Frequencies frequencies, boolean ordered) {
+            this.name = name;
+            this.frequencies = frequencies;
+            this.ordered = ordered;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < frequencies.size(); i++) {
+                min = Math.min(min, frequencies.getValue(i));
+                max = Math.max(max, frequencies.getValue(i));
+            }
+            this.offset = min;
+            this.index = new int[max - min + 1];
+            Arrays.fill(index, -1);
+            for (int i = 0; i < frequencies.size(); i++) {
+                index[frequencies.getValue(i) - min] = i;
+            }
+            this.counts = new long[frequencies.size() + 1];
+        }
+
+        void Add(int value) {
+            int i = value - offset;
+            int entry = i >= 0 && i < index.length ? index[i] : -1;
+            counts[entry < 0 ? counts.length - 1 : entry]++;
+        }
+
+        void Merge(Tally other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+        }
+    }
+
+    private final int threads;
+    private final double significance;
+
+    /**
+     * @param threads number of models sampling at the same time
+     * @param significance family-wise level of the tests, e.g. 0.001
+     */
+    public MarginalValidator(int threads, double significance) {
+        this.threads = Math.max(1, threads);
+        this.significance = significance;
+    }
+
+    /**
+     * Draws the given number of samples from every table and tests them.
+     *
+     * @return one result per table, in the order age, fragility, fracture
+     * type, diagnosis, then hospital and residence per CHO
+     */
+    public List<Result> Run(long samples, long baseSeed) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Tally> merged = null;
+        try {
+            List<Future<List<Tally>>> futures = new ArrayList<>(threads);
+            for (int worker = 0; worker < threads; worker++) {
+                long share = samples / threads + (worker < samples % threads ? 1 : 0);
+                long seed = ReplicationRunner.ReplicationSeed(baseSeed, worker);
+                String name = "MarginalValidator" + worker;
+                futures.add(pool.submit(() -> Sample(name, share, seed)));
+            }
+            for (Future<List<Tally>> future : futures) {
+                List<Tally> tallies;
+                try {
+                    tallies = future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                if (merged == null) {
+                    merged = tallies;
+                } else {
+                    for (int i = 0; i < merged.size(); i++) {
+                        merged.get(i).Merge(tallies.get(i));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        int tests = 0;
+        for (Tally tally : merged) {
+            tests += tally.ordered ? 2 : 1;
+        }
+        List<Result> results = new ArrayList<>(merged.size());
+        for (Tally tally : merged) {
+            results.add(Test(tally, significance / tests));
+        }
+        return results;
+    }
+
+    /**
+     * @return one header line and one line per table
+     */
+    public static String Report(List<Result> results) {
+        StringBuilder report = new StringBuilder(String.format("%-22s %10s %5s %8s %4s %9s %8s %8s %8s %8s%n",
+                "Table", "Samples", "Cells", "ChiSq", "df", "p", "KS D", "KS crit", "MaxDev %", "Outside"));
+        int drifting = 0;
+        for (Result result : results) {
+            report.append(result).append(String.format("%n"));
+            drifting += result.isDrift() ? 1 : 0;
+        }
+        report.append(drifting == 0 ? "No drift" : drifting + " table(s) drift");
+        return report.toString();
+    }
+
+    /**
+     * Samples every table of one all-CHOs model through its Sample*()
+     * methods.
+     */
+    private static List<Tally> Sample(String name, long samples, long seed) {
+        ScenarioConfig scenario = new ScenarioConfig(ScenarioConfig.ALL_CHOS, GlobalObjects.simYear, 0, seed, true);
+        EventsExample model = new EventsExample(null, name, false, false, scenario, new CountingPatientSink());
+        Experiment exp = ScenarioRunner.CreateExperiment(name);
+        try {
+            exp.setSeedGenerator(seed);
+            exp.setShowProgressBar(false);
+            model.connectToExperiment(exp);
+            ScenarioTables tables = model.getTables();
+            List<ChoRegion> regions = model.getRegions();
+            Tally age = new Tally("Age", tables.getAge(), true);
+            Tally fragility = new Tally("Fragility", tables.getFragility(), false);
+            Tally fractureType = new Tally("FractureType", tables.getFractureType(), false);
+            Tally diagnosis = new Tally("Diagnosis", tables.getDiagnosis(), false);
+            Tally[] hospitals = new Tally[regions.size()];
+            Tally[] residences = new Tally[regions.size()];
+            for (int r = 0; r < hospitals.length; r++) {
+                String cho = regions.get(r).getCHO();
+                hospitals[r] = new Tally("Hospital " + cho, tables.getHospitals(cho), false);
+                residences[r] = new Tally("Residence " + cho, tables.getResidences(cho), false);
+            }
+            for (long i = 0; i < samples; i++) {
+                age.Add(model.SampleAge());
+                fragility.Add(model.SampleFragility());
+                fractureType.Add(model.SampleFracType());
+                diagnosis.Add(model.SampleDiagnosis());
+                for (int r = 0; r < hospitals.length; r++) {
+                    hospitals[r].Add(regions.get(r).SampleHospital());
+                    residences[r].Add(regions.get(r).SampleResidence());
+                }
+            }
+            List<Tally> tallies = new ArrayList<>();
+            tallies.add(age);
+            tallies.add(fragility);
+            tallies.add(fractureType);
+            tallies.add(diagnosis);
+            for (int r = 0; r < hospitals.length; r++) {
+                tallies.add(hospitals[r]);
+                tallies.add(residences[r]);
+            }
+            return tallies;
+        } finally {
+            exp.finish();
+        }
+    }
+
+    /**
+     * Runs the tests of one table, each at the given level.
+     */
+    private static Result Test(Tally tally, double level) {
+        ScenarioTables.Frequencies frequencies = tally.frequencies;
+        int k = frequencies.size();
+        long unexpected = tally.counts[k];
+        long n = 0;
+        double weights = 0;
+        for (int i = 0; i < k; i++) {
+            n += tally.counts[i];
+            weights += frequencies.getFrequency(i);
+        }
+        double chiSquare = 0;
+        int cells = 0;
+        double pooledObserved = 0;
+        double pooledExpected = 0;
+        double maxDeviation = 0;
+        for (int i = 0; i < k; i++) {
+            double p = frequencies.getFrequency(i) / weights;
+            double expected = n * p;
+            maxDeviation = Math.max(maxDeviation, Math.abs((double) tally.counts[i] / Math.max(1, n) - p));
+            if (expected < 5) {
+                pooledObserved += tally.counts[i];
+                pooledExpected += expected;
+                continue;
+            }
+            chiSquare += (tally.counts[i] - expected) * (tally.counts[i] - expected) / expected;
+            cells++;
+        }
+        if (pooledExpected > 0) {
+            chiSquare += (pooledObserved - pooledExpected) * (pooledObserved - pooledExpected) / pooledExpected;
+            cells++;
+        }
+        int degreesOfFreedom = Math.max(0, cells - 1);
+        double pValue = cells < 2 ? 1 : ChiSquareUpperTail(chiSquare, degreesOfFreedom);
+        boolean drift = unexpected > 0 || pValue < level;
+
+        double ksDistance = Double.NaN;
+        double ksCritical = Double.NaN;
+        if (tally.ordered && n > 0) {
+            int[] order = new int[k];
+            for (int i = 0; i < k; i++) {
+                order[i] = i;
+            }
+            // entries by value; tables are short, so a plain insertion sort
+            for (int i = 1; i < k; i++) {
+                int entry = order[i];
+                int j = i - 1;
+                while (j >= 0 && frequencies.getValue(order[j]) > frequencies.getValue(entry)) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = entry;
+            }
+            double observed = 0;
+            double expected = 0;
+            ksDistance = 0;
+            for (int entry : order) {
+                observed += (double) tally.counts[entry] / n;
+                expected += frequencies.getFrequency(entry) / weights;
+                ksDistance = Math.max(ksDistance, Math.abs(observed - expected));
+            }
+            // asymptotic critical value; conservative for discrete tables
+            ksCritical = Math.sqrt(-0.5 * Math.log(level / 2) / n);
+            drift |= ksDistance > ksCritical;
+        }
+        return new Result(tally.name, n + unexpected, k, unexpected, chiSquare, degreesOfFreedom, pValue, ksDistance,
+                ksCritical, maxDeviation, drift);
+    }
+
+    /**
+     * @return P(X > x) for a chi-square distributed X, i.e. the regularized
+     * upper incomplete gamma function Q(df / 2, x / 2)
+     */
+    static double ChiSquareUpperTail(double x, int degreesOfFreedom) {
+        double a = degreesOfFreedom / 2.0;
+        double z = x / 2.0;
+        if (z <= 0) {
+            return 1;
+        }
+        double logPrefix = a * Math.log(z) - z - LogGamma(a);
+        if (z < a + 1) {
+            // series of the lower function P
+            double term = 1 / a;
+            double sum = term;
+            for (int i = 1; i < 10000 && Math.abs(term) > Math.abs(sum) * 1e-15; i++) {
+                term *= z / (a + i);
+                sum += term;
+            }
+            return Math.max(0, 1 - sum * Math.exp(logPrefix));
+        }
+        // continued fraction of Q (modified Lentz)
+        double tiny = 1e-300;
+        double b = z + 1 - a;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double h = d;
+        for (int i = 1; i < 10000; i++) {
+            double an = -i * (i - a);
+            b += 2;
+            d = an * d + b;
+            d = Math.abs(d) < tiny ? tiny : d;
+            c = b + an / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return Math.exp(logPrefix) * h;
+    }
+
+    /**
+     * Logarithm of the gamma function (Lanczos approximation, g = 7).
+     */
+    static double LogGamma(double x) {
+        double[] c = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+            -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+            1.5056327351493116e-7};
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - LogGamma(1 - x);
+        }
+        x -= 1;
+        double sum = c[0];
+        for (int i = 1; i < c.length; i++) {
+            sum += c[i] / (x + i);
+        }
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+
+    /**
+     * Samples every table of the scenario tables on all cores and exits with
+     * status 1 if any of them drifts.
+     *
+     * @param args number of samples per table (default 10 million)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long samples = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        MarginalValidator validator = new MarginalValidator(Runtime.getRuntime().availableProcessors(), 0.001);
+        long start = System.currentTimeMillis();
+        List<Result> results = validator.Run(samples, GlobalObjects.seed);
+        System.out.println(Report(results));
+        System.out.println("Elapsed: " + (System.currentTimeMillis() - start) + " ms");
+        for (Result result : results) {
+            if (result.isDrift()) {
+                System.exit(1);
+            }
+        }
+    }
+
+}
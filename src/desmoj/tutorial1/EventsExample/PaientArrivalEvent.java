@@ -1,6 +1,7 @@
 package desmoj.tutorial1.EventsExample;
 
 import desmoj.core.simulator.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class represents the truck arrival event
@@ -46,7 +47,8 @@ public class PaientArrivalEvent extends Event<Patient> {
 		// truck enters parking-lot
 		//myModel.truckQueue.insert(truck);
 		//sendTraceNote("TruckQueueLength: "+ myModel.truckQueue.length());
-GlobalObjects.patientCount++;
+myModel.getStatistics().Record(patient);
+		myModel.getMetrics().EventProcessed(presentTime().getTimeAsDouble(TimeUnit.MINUTES));
          //   System.out.println("New Patient");
 
 	}
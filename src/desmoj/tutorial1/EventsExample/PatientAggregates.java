@@ -0,0 +1,457 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.Model;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Streaming aggregates of the patients generated by one model: age by sex,
+ * hospital by fracture type, diagnosis frequencies, and quantile sketches of
+ * the inter-arrival time and the length of stay.
+ *
+ * Every table is a dense array over the values of the scenario tables (with
+ * one extra slot for values outside them), so Record() is a few array
+ * increments per patient and the memory does not grow with the run. The
+ * patient total and the counts per CHO and diagnosis are not kept twice:
+ * they are read from the PatientStatistics of the model. The observed
+ * proportions are compared with the input frequencies, which validates a
+ * run against its scenario tables without reading LOSPredictions back.
+ * Register() adds the tables to the DESMO-J report written at exp.report().
+ *
+ * A Checkpoint saves the tables and sketches with getState(), so the
+ * aggregates of a resumed run cover the whole run, like its statistics.
+ * PatientAggregates is not thread safe; a model records from its own events
+ * only.
+ */
+public final class PatientAggregates {
+
+    private static final int SUMMARY_GROUP = 5100;
+    private static final int AGE_GROUP = 5110;
+    private static final int HOSPITAL_GROUP = 5120;
+    private static final int DIAGNOSIS_GROUP = 5130;
+
+    private final ScenarioTables tables;
+    private final PatientStatistics statistics;
+    private final String[] chos;// region index -> CHO
+
+    // age: [sex - 1][age - minAge], last slot for ages outside the table
+    private final int minAge;
+    private final long[][] ageBySex;
+
+    // hospital x fracture type, last row and column for unknown values
+    private final int[] hospitals;
+    private final int[] hospitalIndex;// Hospital ID -> row
+    private final int[] fractureIndex;// fracture type -> column
+    private final long[][] hospitalFracture;
+
+    private final QuantileSketch interArrival = new QuantileSketch(0.01, 1e-3, 1e6);// minutes
+    private final QuantileSketch lengthOfStay = new QuantileSketch(0.01, 1e-3, 1e4);// days
+    private double lastArrival = Double.NaN;
+
+    /**
+     * @param statistics the counters of the same patients, which provide
+     * the total and the counts per CHO and diagnosis
+     * @param regions the simulated CHOs, in the order of their indices
+     */
+    public PatientAggregates(ScenarioTables tables, PatientStatistics statistics, List<ChoRegion> regions) {
+        this.tables = tables;
+        this.statistics = statistics;
+        this.chos = new String[regions.size()];
+        for (ChoRegion region : regions) {
+            chos[region.getIndex()] = region.getCHO();
+        }
+
+        ScenarioTables.Frequencies age = tables.getAge();
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < age.size(); i++) {
+            min = Math.min(min, age.getValue(i));
+            max = Math.max(max, age.getValue(i));
+        }
+        this.minAge = min;
+        this.ageBySex = new long[2][max - min + 2];
+
+        List<Integer> hospitalList = new ArrayList<>();
+        int maxHospital = 0;
+        for (String cho : chos) {
+            ScenarioTables.Frequencies frequencies = tables.getHospitals(cho);
+            for (int i = 0; i < frequencies.size(); i++) {
+                if (!hospitalList.contains(frequencies.getValue(i))) {
+                    hospitalList.add(frequencies.getValue(i));
+                    maxHospital = Math.max(maxHospital, frequencies.getValue(i));
+                }
+            }
+        }
+        this.hospitals = new int[hospitalList.size()];
+        this.hospitalIndex = new int[maxHospital + 1];
+        Arrays.fill(hospitalIndex, hospitals.length);
+        for (int i = 0; i < hospitals.length; i++) {
+            hospitals[i] = hospitalList.get(i);
+            hospitalIndex[hospitals[i]] = i;
+        }
+        ScenarioTables.Frequencies fractureType = tables.getFractureType();
+        int maxFracture = 0;
+        for (int i = 0; i < fractureType.size(); i++) {
+            maxFracture = Math.max(maxFracture, fractureType.getValue(i));
+        }
+        this.fractureIndex = new int[maxFracture + 1];
+        Arrays.fill(fractureIndex, fractureType.size());
+        for (int i = 0; i < fractureType.size(); i++) {
+            fractureIndex[fractureType.getValue(i)] = i;
+        }
+        this.hospitalFracture = new long[hospitals.length + 1][fractureType.size() + 1];
+    }
+
+    /**
+     * Adds a generated patient, which is counted in the PatientStatistics
+     * as well.
+     *
+     * @param now arrival time in minutes
+     */
+    public void Record(PatientRecord patient, double now) {
+        long[] ages = ageBySex[patient.Sex == 1 ? 0 : 1];
+        int age = patient.Age - minAge;
+        ages[age >= 0 && age < ages.length - 1 ? age : ages.length - 1]++;
+        int row = patient.Hospital >= 0 && patient.Hospital < hospitalIndex.length
+                ? hospitalIndex[patient.Hospital] : hospitals.length;
+        int column = patient.FracType >= 0 && patient.FracType < fractureIndex.length
+                ? fractureIndex[patient.FracType] : hospitalFracture[row].length - 1;
+        hospitalFracture[row][column]++;
+        if (!Double.isNaN(lastArrival)) {
+            interArrival.Record(now - lastArrival);
+        }
+        lastArrival = now;
+    }
+
+    /**
+     * Adds the length of stay of an admitted patient, in days.
+     */
+    public void RecordStay(double days) {
+        lengthOfStay.Record(days);
+    }
+
+    public long getTotal() {
+        return statistics.getTotal();
+    }
+
+    /**
+     * @param sex 1 male, 2 female, 0 both
+     * @return number of patients of the given sex and age
+     */
+    public long getAgeCount(int sex, int age) {
+        int index = age - minAge;
+        if (index < 0 || index >= ageBySex[0].length - 1) {
+            return 0;
+        }
+        return sex == 0 ? ageBySex[0][index] + ageBySex[1][index] : ageBySex[sex - 1][index];
+    }
+
+    /**
+     * @param sex 1 male, 2 female, 0 both
+     * @return the age at the given quantile (0 to 1), -1 if there are no
+     * patients
+     */
+    public int getAgeQuantile(int sex, double quantile) {
+        long count = 0;
+        for (int age = 0; age < ageBySex[0].length - 1; age++) {
+            count += getAgeCount(sex, age + minAge);
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        long seen = 0;
+        for (int age = 0; age < ageBySex[0].length - 1 && count > 0; age++) {
+            seen += getAgeCount(sex, age + minAge);
+            if (seen > rank) {
+                return age + minAge;
+            }
+        }
+        return -1;
+    }
+
+    public long getHospitalFractureCount(int hospital, int fractureType) {
+        if (hospital < 0 || hospital >= hospitalIndex.length || hospitalIndex[hospital] == hospitals.length
+                || fractureType < 0 || fractureType >= fractureIndex.length
+                || fractureIndex[fractureType] == hospitalFracture[0].length - 1) {
+            return 0;
+        }
+        return hospitalFracture[hospitalIndex[hospital]][fractureIndex[fractureType]];
+    }
+
+    public long getDiagnosisCount(String diag1) {
+        return statistics.getCount("Diagnosis=" + diag1);
+    }
+
+    /** @return inter-arrival times of the model in minutes */
+    public QuantileSketch getInterArrival() {
+        return interArrival;
+    }
+
+    /** @return lengths of stay of admitted patients in days */
+    public QuantileSketch getLengthOfStay() {
+        return lengthOfStay;
+    }
+
+    /**
+     * @return the largest difference between the observed proportion of an
+     * age and its input frequency
+     */
+    public double getAgeDeviation() {
+        ScenarioTables.Frequencies age = tables.getAge();
+        long[] observed = new long[age.size()];
+        for (int i = 0; i < age.size(); i++) {
+            observed[i] = getAgeCount(0, age.getValue(i));
+        }
+        return MaxDeviation(observed, Proportions(age));
+    }
+
+    public double getFractureTypeDeviation() {
+        long[] observed = new long[tables.getFractureType().size()];
+        for (long[] row : hospitalFracture) {
+            for (int i = 0; i < observed.length; i++) {
+                observed[i] += row[i];
+            }
+        }
+        return MaxDeviation(observed, Proportions(tables.getFractureType()));
+    }
+
+    public double getDiagnosisDeviation() {
+        ScenarioTables.Frequencies diagnosis = tables.getDiagnosis();
+        long[] observed = new long[diagnosis.size()];
+        for (int i = 0; i < observed.length; i++) {
+            observed[i] = getDiagnosisCount(tables.getDiagnosisCode(diagnosis.getValue(i)));
+        }
+        return MaxDeviation(observed, Proportions(diagnosis));
+    }
+
+    /**
+     * @return the tables and sketches, to be saved in a Checkpoint
+     */
+    public byte[] getState() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            WriteCounts(out, ageBySex);
+            WriteCounts(out, hospitalFracture);
+            interArrival.Write(out);
+            lengthOfStay.Write(out);
+            out.writeDouble(lastArrival);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the tables and sketches with those of getState().
+     *
+     * @throws IllegalArgumentException if the state belongs to other
+     * scenario tables
+     */
+    public void setState(byte[] state) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            ReadCounts(in, ageBySex);
+            ReadCounts(in, hospitalFracture);
+            interArrival.Read(in);
+            lengthOfStay.Read(in);
+            lastArrival = in.readDouble();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the largest difference between the observed proportion of a
+     * hospital and its input frequency, weighted by the patients of each CHO
+     */
+    public double getHospitalDeviation() {
+        long[] observed = new long[hospitals.length];
+        for (int i = 0; i < hospitals.length; i++) {
+            for (long count : hospitalFracture[i]) {
+                observed[i] += count;
+            }
+        }
+        return MaxDeviation(observed, ExpectedHospitals());
+    }
+
+    /**
+     * Adds the aggregates to the report of the given model: a summary with
+     * the deviations from the input frequencies and the quantiles, and one
+     * table each of age by sex, hospital by fracture type and diagnosis.
+     */
+    public void Register(Model owner, boolean showInReport) {
+        String[] summary = {"Title", "Obs", "Categories", "Max Dev %", "Median", "P90", "P99"};
+        AddRow(owner, showInReport, "Aggregate Age", "Patient Aggregates", SUMMARY_GROUP, summary, () -> new String[]{
+            "Age", Long.toString(getTotal()), Integer.toString(tables.getAge().size()), Percent(getAgeDeviation()),
+            Integer.toString(getAgeQuantile(0, 0.5)), Integer.toString(getAgeQuantile(0, 0.9)),
+            Integer.toString(getAgeQuantile(0, 0.99))});
+        for (int sex = 1; sex <= 2; sex++) {
+            final int s = sex;
+            String name = sex == 1 ? "Age Male" : "Age Female";
+            AddRow(owner, showInReport, "Aggregate " + name, "Patient Aggregates", SUMMARY_GROUP, summary,
+                    () -> new String[]{name, Long.toString(Sum(ageBySex[s - 1])), "", "",
+                        Integer.toString(getAgeQuantile(s, 0.5)), Integer.toString(getAgeQuantile(s, 0.9)),
+                        Integer.toString(getAgeQuantile(s, 0.99))});
+        }
+        AddRow(owner, showInReport, "Aggregate Hospital", "Patient Aggregates", SUMMARY_GROUP, summary,
+                () -> new String[]{"Hospital", Long.toString(getTotal()), Integer.toString(hospitals.length),
+                    Percent(getHospitalDeviation()), "", "", ""});
+        AddRow(owner, showInReport, "Aggregate Fracture Type", "Patient Aggregates", SUMMARY_GROUP, summary,
+                () -> new String[]{"Fracture Type", Long.toString(getTotal()),
+                    Integer.toString(tables.getFractureType().size()), Percent(getFractureTypeDeviation()), "", "", ""});
+        AddRow(owner, showInReport, "Aggregate Diagnosis", "Patient Aggregates", SUMMARY_GROUP, summary,
+                () -> new String[]{"Diagnosis", Long.toString(getTotal()), Integer.toString(tables.getDiagnosis().size()),
+                    Percent(getDiagnosisDeviation()), "", "", ""});
+        AddRow(owner, showInReport, "Aggregate Inter-arrival Time", "Patient Aggregates", SUMMARY_GROUP, summary,
+                () -> SketchRow("Inter-arrival Time [min]", interArrival));
+        AddRow(owner, showInReport, "Aggregate Length of Stay", "Patient Aggregates", SUMMARY_GROUP, summary,
+                () -> SketchRow("Length of Stay [days]", lengthOfStay));
+
+        String[] ageColumns = {"Age", "Male", "Female", "Obs %", "Input %"};
+        ScenarioTables.Frequencies age = tables.getAge();
+        double[] ageInput = Proportions(age);
+        for (int i = 0; i < age.size(); i++) {
+            final int value = age.getValue(i);
+            final double input = ageInput[i];
+            AddRow(owner, showInReport, "Age " + value, "Age by Sex", AGE_GROUP, ageColumns, () -> new String[]{
+                Integer.toString(value), Long.toString(getAgeCount(1, value)), Long.toString(getAgeCount(2, value)),
+                Percent(Share(getAgeCount(0, value))), Percent(input)});
+        }
+
+        ScenarioTables.Frequencies fractureType = tables.getFractureType();
+        String[] hospitalColumns = new String[fractureType.size() + 4];
+        hospitalColumns[0] = "Hospital";
+        for (int i = 0; i < fractureType.size(); i++) {
+            hospitalColumns[i + 1] = "FracType " + fractureType.getValue(i);
+        }
+        hospitalColumns[fractureType.size() + 1] = "Total";
+        hospitalColumns[fractureType.size() + 2] = "Obs %";
+        hospitalColumns[fractureType.size() + 3] = "Expected %";
+        for (int i = 0; i < hospitals.length; i++) {
+            final int row = i;
+            AddRow(owner, showInReport, "Hospital " + hospitals[i], "Hospital x Fracture Type", HOSPITAL_GROUP,
+                    hospitalColumns, () -> {
+                        String[] entries = new String[hospitalColumns.length];
+                        entries[0] = Integer.toString(hospitals[row]);
+                        for (int f = 0; f < fractureType.size(); f++) {
+                            entries[f + 1] = Long.toString(hospitalFracture[row][f]);
+                        }
+                        long sum = Sum(hospitalFracture[row]);
+                        entries[fractureType.size() + 1] = Long.toString(sum);
+                        entries[fractureType.size() + 2] = Percent(Share(sum));
+                        entries[fractureType.size() + 3] = Percent(ExpectedHospitals()[row]);
+                        return entries;
+                    });
+        }
+
+        String[] diagnosisColumns = {"Diagnosis", "Obs", "Obs %", "Input %"};
+        ScenarioTables.Frequencies diagnosis = tables.getDiagnosis();
+        double[] diagnosisInput = Proportions(diagnosis);
+        for (int i = 0; i < diagnosis.size(); i++) {
+            final int index = i;
+            final String code = tables.getDiagnosisCode(diagnosis.getValue(i));
+            AddRow(owner, showInReport, "Diagnosis " + code, "Diagnosis", DIAGNOSIS_GROUP, diagnosisColumns,
+                    () -> new String[]{code, Long.toString(getDiagnosisCount(code)),
+                        Percent(Share(getDiagnosisCount(code))), Percent(diagnosisInput[index])});
+        }
+    }
+
+    private static void AddRow(Model owner, boolean showInReport, String name, String groupHeading, int groupID,
+            String[] columns, Supplier<String[]> row) {
+        new AggregateReportable(owner, name, showInReport, groupHeading, groupID, columns, row);
+    }
+
+    /**
+     * @return the expected proportion of every hospital: the hospital
+     * frequencies of each CHO weighted by the share of its patients
+     */
+    private double[] ExpectedHospitals() {
+        double[] expected = new double[hospitals.length];
+        long total = getTotal();
+        for (String cho : chos) {
+            long regionCount = statistics.getCount("CHO=" + cho);
+            if (regionCount == 0) {
+                continue;
+            }
+            ScenarioTables.Frequencies frequencies = tables.getHospitals(cho);
+            double[] proportions = Proportions(frequencies);
+            for (int i = 0; i < frequencies.size(); i++) {
+                expected[hospitalIndex[frequencies.getValue(i)]] += proportions[i] * regionCount / total;
+            }
+        }
+        return expected;
+    }
+
+    private double MaxDeviation(long[] observed, double[] expected) {
+        double deviation = 0;
+        for (int i = 0; i < observed.length; i++) {
+            deviation = Math.max(deviation, Math.abs(Share(observed[i]) - expected[i]));
+        }
+        return deviation;
+    }
+
+    private double Share(long count) {
+        long total = getTotal();
+        return total == 0 ? 0 : (double) count / total;
+    }
+
+    private static void WriteCounts(DataOutputStream out, long[][] counts) throws IOException {
+        out.writeInt(counts.length);
+        for (long[] row : counts) {
+            out.writeInt(row.length);
+            for (long count : row) {
+                out.writeLong(count);
+            }
+        }
+    }
+
+    private static void ReadCounts(DataInputStream in, long[][] counts) throws IOException {
+        if (in.readInt() != counts.length) {
+            throw new IllegalArgumentException("Aggregates of other scenario tables");
+        }
+        for (long[] row : counts) {
+            if (in.readInt() != row.length) {
+                throw new IllegalArgumentException("Aggregates of other scenario tables");
+            }
+            for (int i = 0; i < row.length; i++) {
+                row[i] = in.readLong();
+            }
+        }
+    }
+
+    private static double[] Proportions(ScenarioTables.Frequencies frequencies) {
+        double sum = 0;
+        for (int i = 0; i < frequencies.size(); i++) {
+            sum += frequencies.getFrequency(i);
+        }
+        double[] proportions = new double[frequencies.size()];
+        for (int i = 0; i < proportions.length; i++) {
+            proportions[i] = frequencies.getFrequency(i) / sum;
+        }
+        return proportions;
+    }
+
+    private static long Sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static String Percent(double proportion) {
+        return String.format("%.2f", 100 * proportion);
+    }
+
+    private static String[] SketchRow(String title, QuantileSketch sketch) {
+        return new String[]{title, Long.toString(sketch.getCount()), "", "",
+            String.format("%.2f", sketch.getQuantile(0.5)), String.format("%.2f", sketch.getQuantile(0.9)),
+            String.format("%.2f", sketch.getQuantile(0.99))};
+    }
+
+}
@@ -0,0 +1,87 @@
+package desmoj.tutorial1.EventsExample;
+
+/**
+ * Copy of the attributes of a generated patient, i.e. one row of the
+ * LOSPredictions table. Unlike the Patient entity it carries no reference
+ * to the model, so it can be handed to another thread for persistence.
+ *
+ * The patient attributes are immutable. The predicted length of stay and
+ * discharge destination are set once by the LosModel, in place, before the
+ * record is handed on; until then getPredictedLOS() is NaN and
+ * getDestination() is NOT_SCORED.
+ */
+public final class PatientRecord {
+
+    public final int Hospital;
+    public final int Sex;
+    public final int ResID;
+    public final int Age;
+    public final String Diag1;
+    public final int FracType;
+    public final int Fragility;
+    public final String CHO;
+    public final int SimYear;
+    private double predictedLOS;// days
+    private int destination;// index into LosModel.getDestinations(), from 1
+
+    /** Destination of a record that has not been scored */
+    public static final int NOT_SCORED = 0;
+
+    public PatientRecord(int hospital, int sex, int resID, int age, String diag1,
+            int fracType, int fragility, String cho, int simYear) {
+        this(hospital, sex, resID, age, diag1, fracType, fragility, cho, simYear, Double.NaN, NOT_SCORED);
+    }
+
+    public PatientRecord(int hospital, int sex, int resID, int age, String diag1,
+            int fracType, int fragility, String cho, int simYear, double predictedLOS, int destination) {
+        Hospital = hospital;
+        Sex = sex;
+        ResID = resID;
+        Age = age;
+        Diag1 = diag1;
+        FracType = fracType;
+        Fragility = fragility;
+        CHO = cho;
+        SimYear = simYear;
+        this.predictedLOS = predictedLOS;
+        this.destination = destination;
+    }
+
+    /**
+     * Takes a snapshot of the given patient entity for the given simulation
+     * year.
+     */
+    public PatientRecord(Patient patient, int simYear) {
+        this(patient.Hospital, patient.Sex, patient.ResID, patient.Age, patient.Diag1,
+                patient.FracType, patient.Fragility, patient.CHO, simYear);
+    }
+
+    /**
+     * Stores the predictions of the LosModel. Must be called before the
+     * record is handed to another thread.
+     *
+     * @throws IllegalStateException if the record is already scored
+     */
+    void SetPrediction(double predictedLOS, int destination) {
+        if (isScored()) {
+            throw new IllegalStateException("Patient record is already scored");
+        }
+        this.predictedLOS = predictedLOS;
+        this.destination = destination;
+    }
+
+    /** @return predicted length of stay in days, NaN if not scored */
+    public double getPredictedLOS() {
+        return predictedLOS;
+    }
+
+    /** @return predicted discharge destination, NOT_SCORED if not scored */
+    public int getDestination() {
+        return destination;
+    }
+
+    public boolean isScored() {
+        return destination != NOT_SCORED;
+    }
+
+}
@@ -0,0 +1,26 @@
+package desmoj.tutorial1.EventsExample;
+
+/**
+ * Destination for the patients generated by the model. The EventsExample
+ * model is given a sink when it is created, so the same model can write to
+ * SQL Server, to an embedded database file or nowhere at all.
+ *
+ * InsertPatient() is called from the scheduler thread for every generated
+ * patient; Close() is called once after the experiment has finished and must
+ * persist everything that was accepted.
+ */
+public interface PatientSink {
+
+    void InsertPatient(PatientRecord patient);
+
+    /**
+     * Makes all patients accepted so far durable.
+     */
+    void Flush();
+
+    /**
+     * Flushes and releases all resources held by this sink.
+     */
+    void Close();
+
+}
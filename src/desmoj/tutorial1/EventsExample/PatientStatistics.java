@@ -0,0 +1,370 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the patients that arrived in one model.
+ *
+ * Counters are keyed "Category=Value" (Sex, CHO, Hospital, Residence,
+ * AgeBand, FractureType, Diagnosis), e.g. "Hospital=300" or
+ * "AgeBand=80-84"; the key "Total" counts all patients. Every counter is a
+ * LongAdder, so any number of threads can record patients without locking.
+ * The statistics of several models (scenarios, replications) are combined
+ * with Merge().
+ *
+ * Record() does not build the keys: the counters of a category are a dense
+ * array indexed by sex, Hospital ID, residence, age band or fracture type,
+ * and CHO and diagnosis by the index of their code, which a small hash
+ * table finds by reference since the scenario tables intern the codes. The
+ * keys are only built by getCounts(), getCount() and Report(). A slot is
+ * allocated the first time its value is seen; values beyond the dense range
+ * are counted in a map.
+ */
+public class PatientStatistics {
+
+    public static final String TOTAL = "Total";
+
+    /** values from 0 to DENSE_LIMIT - 1 get a slot of a dense array */
+    private static final int DENSE_LIMIT = 1 << 16;
+
+    /**
+     * The CHO or diagnosis codes of a category, in the order of their
+     * indices, with an open addressing table that finds the index of a code
+     * by reference. Replaced as a whole when a code is added.
+     */
+    private static final class Codes {
+
+        final String[] labels;
+        private final String[] table;
+        private final int[] indices;
+
+        Codes(String[] labels) {
+            this.labels = labels;
+            this.table = new String[Integer.highestOneBit(4 * Math.max(1, labels.length))];
+            this.indices = new int[table.length];
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] != null) {
+                    int slot = Slot(labels[i]);
+                    table[slot] = labels[i];
+                    indices[slot] = i;
+                }
+            }
+        }
+
+        /** @return the index of the given code, -1 if it is not known by reference */
+        int Find(String label) {
+            if (label == null) {
+                return -1;
+            }
+            int slot = Slot(label);
+            return table[slot] == label ? indices[slot] : -1;
+        }
+
+        private int Slot(String label) {
+            int mask = table.length - 1;
+            int slot = label.hashCode() & mask;
+            while (table[slot] != null && table[slot] != label) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * The counters of one category. The array only grows, and is replaced
+     * rather than changed, so Add() reads it without locking.
+     */
+    private static final class Category {
+
+        private final String name;
+        private volatile LongAdder[] counts = new LongAdder[0];
+        private volatile Codes codes = new Codes(new String[0]);// CHO and Diagnosis only
+
+        Category(String name) {
+            this.name = name;
+        }
+
+        void Add(int index, long amount) {
+            LongAdder[] current = counts;
+            LongAdder count = index < current.length ? current[index] : null;
+            if (count == null) {
+                count = Slot(index);
+            }
+            count.add(amount);
+        }
+
+        /** @return the index of the given code, adding it if it is new */
+        int IndexOf(String label) {
+            Codes current = codes;
+            int index = current.Find(label);
+            return index >= 0 ? index : Label(label);
+        }
+
+        private synchronized LongAdder Slot(int index) {
+            LongAdder[] current = counts;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, Math.max(index + 1, 2 * current.length));
+            } else if (current[index] == null) {
+                current = current.clone();
+            } else {
+                return current[index];
+            }
+            current[index] = new LongAdder();
+            counts = current;
+            return current[index];
+        }
+
+        private synchronized int Label(String label) {
+            Codes current = codes;
+            for (int i = 0; i < current.labels.length; i++) {
+                if (Objects.equals(current.labels[i], label)) {
+                    return i;
+                }
+            }
+            String[] labels = Arrays.copyOf(current.labels, current.labels.length + 1);
+            labels[current.labels.length] = label == null ? null : label.intern();
+            codes = new Codes(labels);
+            return current.labels.length;
+        }
+
+        /** Adds the key and count of every allocated slot to the given map. */
+        void Snapshot(Map<String, Long> snapshot) {
+            LongAdder[] current = counts;
+            String[] names = codes.labels;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] != null) {
+                    snapshot.put(name + "=" + Value(i, names), current[i].sum());
+                }
+            }
+        }
+
+        /** @return the value of the key of the given slot */
+        String Value(int index, String[] names) {
+            switch (name) {
+                case "Sex":
+                    return index == 0 ? "Male" : "Female";
+                case "AgeBand":
+                    return AgeBand(5 * index);
+                case "CHO":
+                case "Diagnosis":
+                    return names[index];
+                default:
+                    return Integer.toString(index);
+            }
+        }
+
+        /** @return the count of the given key value, 0 if it has no slot */
+        long Count(String value) {
+            int index = -1;
+            if (name.equals("CHO") || name.equals("Diagnosis")) {
+                String[] names = codes.labels;
+                for (int i = 0; i < names.length && index < 0; i++) {
+                    if (Objects.equals(names[i], value)) {
+                        index = i;
+                    }
+                }
+            } else {
+                try {
+                    index = Index(value);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+            LongAdder[] current = counts;
+            return index >= 0 && index < current.length && current[index] != null ? current[index].sum() : 0;
+        }
+
+        /**
+         * @return the slot of the given key value, -1 if it has none
+         */
+        int Index(String value) {
+            switch (name) {
+                case "Sex":
+                    return value.equals("Male") ? 0 : value.equals("Female") ? 1 : -1;
+                case "AgeBand":
+                    int dash = value.indexOf('-', 1);
+                    return dash < 0 ? -1 : Dense(Integer.parseInt(value.substring(0, dash)) / 5);
+                case "CHO":
+                case "Diagnosis":
+                    return IndexOf(value);
+                default:
+                    return Dense(Integer.parseInt(value));
+            }
+        }
+    }
+
+    private final LongAdder total = new LongAdder();
+    private final Category sex = new Category("Sex");
+    private final Category cho = new Category("CHO");
+    private final Category hospital = new Category("Hospital");
+    private final Category residence = new Category("Residence");
+    private final Category ageBand = new Category("AgeBand");
+    private final Category fractureType = new Category("FractureType");
+    private final Category diagnosis = new Category("Diagnosis");
+    private final Category[] categories = {sex, cho, hospital, residence, ageBand, fractureType, diagnosis};
+    private final ConcurrentHashMap<String, LongAdder> others = new ConcurrentHashMap<>();
+
+    /**
+     * Counts one arrived patient.
+     */
+    public void Record(int sex, String cho, int hospital, int resID, int age, int fracType, String diag1) {
+        total.increment();
+        this.sex.Add(sex == 1 ? 0 : 1, 1);
+        this.cho.Add(this.cho.IndexOf(cho), 1);
+        Add(this.hospital, hospital, 1);
+        Add(this.residence, resID, 1);
+        if (age >= 0) {
+            Add(this.ageBand, age / 5, 1);
+        } else {
+            Other("AgeBand=" + AgeBand(age), 1);
+        }
+        Add(this.fractureType, fracType, 1);
+        this.diagnosis.Add(this.diagnosis.IndexOf(diag1), 1);
+    }
+
+    public void Record(PatientRecord patient) {
+        Record(patient.Sex, patient.CHO, patient.Hospital, patient.ResID, patient.Age, patient.FracType,
+                patient.Diag1);
+    }
+
+    public void Record(Patient patient) {
+        Record(patient.Sex, patient.CHO, patient.Hospital, patient.ResID, patient.Age, patient.FracType,
+                patient.Diag1);
+    }
+
+    /**
+     * Adds all counters of the given statistics to this one.
+     */
+    public void Merge(PatientStatistics other) {
+        Merge(other.getCounts());
+    }
+
+    /**
+     * Adds the given counters, e.g. those of getCounts() saved in a
+     * checkpoint, to this one.
+     */
+    public void Merge(Map<String, Long> counts) {
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            Increment(count.getKey(), count.getValue());
+        }
+    }
+
+    /**
+     * @return the sum of the given statistics
+     */
+    public static PatientStatistics Merge(Collection<PatientStatistics> statistics) {
+        PatientStatistics merged = new PatientStatistics();
+        for (PatientStatistics single : statistics) {
+            merged.Merge(single);
+        }
+        return merged;
+    }
+
+    /**
+     * @return five-year age band of the given age, e.g. "80-84"
+     */
+    public static String AgeBand(int age) {
+        int lower = age - Math.floorMod(age, 5);
+        return lower + "-" + (lower + 4);
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return the counter of the given key, 0 if there is none
+     */
+    public long getCount(String key) {
+        if (key.equals(TOTAL)) {
+            return total.sum();
+        }
+        LongAdder other = others.get(key);
+        long count = other == null ? 0 : other.sum();
+        int separator = key.indexOf('=');
+        if (separator > 0) {
+            String name = key.substring(0, separator);
+            for (Category category : categories) {
+                if (category.name.equals(name)) {
+                    count += category.Count(key.substring(separator + 1));
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return all counters, sorted by key
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        snapshot.put(TOTAL, total.sum());
+        for (Category category : categories) {
+            category.Snapshot(snapshot);
+        }
+        for (Map.Entry<String, LongAdder> count : others.entrySet()) {
+            snapshot.merge(count.getKey(), count.getValue().sum(), Long::sum);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return one "key: count" line per counter
+     */
+    public String Report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> count : getCounts().entrySet()) {
+            report.append(String.format("%-24s %10d%n", count.getKey(), count.getValue()));
+        }
+        return report.toString();
+    }
+
+    private void Increment(String key, long amount) {
+        if (key.equals(TOTAL)) {
+            total.add(amount);
+            return;
+        }
+        int separator = key.indexOf('=');
+        if (separator > 0) {
+            String name = key.substring(0, separator);
+            for (Category category : categories) {
+                if (category.name.equals(name)) {
+                    int index;
+                    try {
+                        index = category.Index(key.substring(separator + 1));
+                    } catch (NumberFormatException e) {
+                        index = -1;
+                    }
+                    if (index >= 0) {
+                        category.Add(index, amount);
+                        return;
+                    }
+                }
+            }
+        }
+        Other(key, amount);
+    }
+
+    private void Add(Category category, int value, long amount) {
+        if (value >= 0 && value < DENSE_LIMIT) {
+            category.Add(value, amount);
+        } else {
+            Other(category.name + "=" + value, amount);
+        }
+    }
+
+    private void Other(String key, long amount) {
+        others.computeIfAbsent(key, k -> new LongAdder()).add(amount);
+    }
+
+    private static int Dense(int value) {
+        return value >= 0 && value < DENSE_LIMIT ? value : -1;
+    }
+
+}
@@ -0,0 +1,140 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Quantile sketch of positive values in logarithmic buckets, so that every
+ * quantile is returned with a bounded relative error whatever the shape of
+ * the distribution.
+ *
+ * The buckets cover a fixed range of values chosen up front, which keeps
+ * the sketch at a constant size (about 1000 longs for 1% accuracy over nine
+ * orders of magnitude); values outside the range fall into the first or
+ * last bucket, and values of 0 or less are counted apart. Min, max and mean
+ * are exact.
+ *
+ * A QuantileSketch is not thread safe.
+ */
+public final class QuantileSketch {
+
+    private final double gamma;
+    private final double logGamma;
+    private final int minIndex;
+    private final long[] counts;
+    private long nonPositive = 0;
+    private long count = 0;
+    private double sum = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param relativeAccuracy e.g. 0.01 for quantiles within 1%
+     * @param minValue smallest positive value that is told apart
+     * @param maxValue largest value that is told apart
+     */
+    public QuantileSketch(double relativeAccuracy, double minValue, double maxValue) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1 || minValue <= 0 || maxValue <= minValue) {
+            throw new IllegalArgumentException("Expected 0 < accuracy < 1 and 0 < minValue < maxValue");
+        }
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndex = Index(minValue);
+        this.counts = new long[Index(maxValue) - minIndex + 1];
+    }
+
+    public void Record(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (value <= 0) {
+            nonPositive++;
+            return;
+        }
+        int bucket = Index(value) - minIndex;
+        counts[bucket < 0 ? 0 : bucket >= counts.length ? counts.length - 1 : bucket]++;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the value at the given quantile, NaN if nothing was recorded
+     */
+    public double getQuantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        if (rank < nonPositive) {
+            return Math.min(0, max);
+        }
+        long seen = nonPositive;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen > rank) {
+                // midpoint of the bucket in relative terms
+                double value = 2 * Math.pow(gamma, bucket + minIndex) / (gamma + 1);
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /** @return mean of the recorded values, NaN if there are none */
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Writes the buckets and moments, e.g. into a Checkpoint.
+     */
+    void Write(DataOutput out) throws IOException {
+        out.writeInt(counts.length);
+        for (long bucket : counts) {
+            out.writeLong(bucket);
+        }
+        out.writeLong(nonPositive);
+        out.writeLong(count);
+        out.writeDouble(sum);
+        out.writeDouble(min);
+        out.writeDouble(max);
+    }
+
+    /**
+     * Replaces the buckets and moments with those written by Write().
+     *
+     * @throws IllegalArgumentException if they were written by a sketch
+     * with other buckets
+     */
+    void Read(DataInput in) throws IOException {
+        if (in.readInt() != counts.length) {
+            throw new IllegalArgumentException("Quantile sketch of another range or accuracy");
+        }
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] = in.readLong();
+        }
+        nonPositive = in.readLong();
+        count = in.readLong();
+        sum = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+    }
+
+    private int Index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+}
@@ -0,0 +1,42 @@
+package desmoj.tutorial1.EventsExample;
+
+/**
+ * SplitMix64 pseudo random number stream used by the primitive samplers.
+ *
+ * The whole state of the stream is one long, which getState()/setState()
+ * expose so that a run can be checkpointed and resumed at the same position.
+ */
+public final class RandomStream {
+
+    private long state;
+
+    public RandomStream(long seed) {
+        this.state = seed;
+    }
+
+    public long NextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** @return uniform number in [0,1) */
+    public double NextDouble() {
+        return (NextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /** @return exponentially distributed number with the given rate */
+    public double NextExponential(double rate) {
+        return -Math.log(1.0 - NextDouble()) / rate;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+}
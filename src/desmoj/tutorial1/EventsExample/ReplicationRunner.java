@@ -0,0 +1,123 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent replications of one (CHO, year) scenario in parallel and
+ * aggregates their patient counters into confidence intervals.
+ *
+ * Replication i uses a seed derived from the base seed and i, so every
+ * replication (and therefore every DiscreteDistEmpirical stream seeded from
+ * its experiment) is reproducible on its own. Replications are started in
+ * rounds of one per thread until the confidence intervals reach the target
+ * precision or maxReplications is hit.
+ */
+public class ReplicationRunner {
+
+    private final int threads;
+    private final double confidence;
+    private final double relativePrecision;
+    private final double minMean;
+    private final int minReplications;
+    private final int maxReplications;
+
+    /**
+     * @param threads number of replications simulated at the same time
+     * @param confidence confidence level of the intervals, e.g. 0.95
+     * @param relativePrecision target half width relative to the mean
+     * @param minMean counters with a smaller mean do not hold up the run
+     * @param minReplications replications run before the precision is checked
+     * @param maxReplications upper limit of replications
+     */
+    public ReplicationRunner(int threads, double confidence, double relativePrecision, double minMean,
+            int minReplications, int maxReplications) {
+        this.threads = Math.max(1, threads);
+        this.confidence = confidence;
+        this.relativePrecision = relativePrecision;
+        this.minMean = minMean;
+        this.minReplications = Math.max(2, minReplications);
+        this.maxReplications = Math.max(this.minReplications, maxReplications);
+    }
+
+    /**
+     * @return seed of the given replication, spread over the whole long range
+     */
+    public static long ReplicationSeed(long baseSeed, int replication) {
+        long z = baseSeed + (replication + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Replicates the given scenario with the arrival mode and horizon of
+     * GlobalObjects.
+     */
+    public ReplicationStatistics Run(String cho, String simYear, long baseSeed, boolean lightweight)
+            throws InterruptedException {
+        return Run(cho, simYear, baseSeed, lightweight, GlobalObjects.arrivalMode, GlobalObjects.horizonYears);
+    }
+
+    /**
+     * Replicates the given scenario until the counters are precise enough or
+     * maxReplications is reached. Only the POISSON and NHPP arrival modes
+     * vary the number of arrivals between replications.
+     */
+    public ReplicationStatistics Run(String cho, String simYear, long baseSeed, boolean lightweight,
+            ArrivalProcess.Mode arrivalMode, int horizonYears) throws InterruptedException {
+        ReplicationStatistics statistics = new ReplicationStatistics();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int started = 0;
+            while (started < maxReplications) {
+                int round = Math.min(maxReplications - started,
+                        Math.max(threads, started < minReplications ? minReplications - started : 0));
+                List<Future<PatientStatistics>> futures = new ArrayList<>(round);
+                for (int i = 0; i < round; i++) {
+                    ScenarioConfig scenario = new ScenarioConfig(cho, simYear, started + i,
+                            ReplicationSeed(baseSeed, started + i), lightweight, arrivalMode, horizonYears);
+                    futures.add(pool.submit(() -> {
+                        ScenarioResult result = ScenarioRunner.Run(scenario, new CountingPatientSink());
+                        if (!result.isSuccessful()) {
+                            throw new IllegalStateException("Replication " + scenario + " failed", result.getFailure());
+                        }
+                        return result.getStatistics();
+                    }));
+                }
+                for (Future<PatientStatistics> future : futures) {
+                    try {
+                        statistics.Add(future.get().getCounts());
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+                started += round;
+                if (started >= minReplications
+                        && statistics.IsPrecise(confidence, relativePrecision, minMean)) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return statistics;
+    }
+
+    /**
+     * Replicates the scenario in GlobalObjects until all counters with a
+     * mean of at least 10 patients are known to within 5% at 95% confidence.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        ReplicationRunner runner = new ReplicationRunner(Runtime.getRuntime().availableProcessors(),
+                0.95, 0.05, 10, 5, 200);
+        ReplicationStatistics statistics = runner.Run(GlobalObjects.simCHO, GlobalObjects.simYear,
+                GlobalObjects.seed, true);
+        System.out.println(statistics.Report(0.95));
+    }
+
+}
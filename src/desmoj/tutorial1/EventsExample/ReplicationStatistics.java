@@ -0,0 +1,151 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates the counters of independent replications into means and
+ * Student-t confidence intervals. A counter missing from a replication
+ * counts as zero there.
+ */
+public class ReplicationStatistics {
+
+    private final Map<String, double[]> sums = new TreeMap<>();// key -> {sum, sum of squares}
+    private int replications = 0;
+
+    public synchronized void Add(Map<String, Long> counts) {
+        replications++;
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            double[] sum = sums.get(count.getKey());
+            if (sum == null) {
+                sum = new double[2];
+                sums.put(count.getKey(), sum);
+            }
+            double value = count.getValue();
+            sum[0] += value;
+            sum[1] += value * value;
+        }
+    }
+
+    public synchronized int getReplications() {
+        return replications;
+    }
+
+    public synchronized Iterable<String> getKeys() {
+        return new TreeMap<>(sums).keySet();
+    }
+
+    public synchronized double getMean(String key) {
+        double[] sum = sums.get(key);
+        return sum == null || replications == 0 ? 0 : sum[0] / replications;
+    }
+
+    public synchronized double getStandardDeviation(String key) {
+        double[] sum = sums.get(key);
+        if (sum == null || replications < 2) {
+            return 0;
+        }
+        double variance = (sum[1] - sum[0] * sum[0] / replications) / (replications - 1);
+        return Math.sqrt(Math.max(0, variance));
+    }
+
+    /**
+     * @return half width of the confidence interval of the mean of the given
+     * counter, or infinity with fewer than two replications
+     */
+    public synchronized double getHalfWidth(String key, double confidence) {
+        if (replications < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = StudentQuantile(1 - (1 - confidence) / 2, replications - 1);
+        return t * getStandardDeviation(key) / Math.sqrt(replications);
+    }
+
+    /**
+     * Checks the stopping rule: every counter whose mean is at least
+     * minMean must have a half width of at most relativePrecision times its
+     * mean. Rarer counters are reported but would need far more replications
+     * to pin down, so they do not hold up the run.
+     */
+    public synchronized boolean IsPrecise(double confidence, double relativePrecision, double minMean) {
+        if (replications < 2) {
+            return false;
+        }
+        for (String key : sums.keySet()) {
+            double mean = getMean(key);
+            if (mean >= minMean && getHalfWidth(key, confidence) > relativePrecision * mean) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return one line per counter: key, mean, standard deviation and the
+     * confidence interval
+     */
+    public synchronized String Report(double confidence) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-24s %12s %12s %25s%n", "Counter", "Mean", "Std.Dev.",
+                Math.round(confidence * 100) + "% Confidence Interval"));
+        for (String key : sums.keySet()) {
+            double mean = getMean(key);
+            double halfWidth = getHalfWidth(key, confidence);
+            report.append(String.format("%-24s %12.2f %12.2f %12.2f %12.2f%n", key, mean,
+                    getStandardDeviation(key), mean - halfWidth, mean + halfWidth));
+        }
+        report.append("Replications: ").append(replications);
+        return report.toString();
+    }
+
+    /**
+     * Quantile of Student's t distribution. Exact for one and two degrees of
+     * freedom, otherwise derived from the normal quantile with the
+     * Cornish-Fisher expansion (within 1% from three degrees of freedom on).
+     */
+    static double StudentQuantile(double p, int degreesOfFreedom) {
+        if (degreesOfFreedom == 1) {
+            return Math.tan(Math.PI * (p - 0.5));
+        }
+        if (degreesOfFreedom == 2) {
+            return (2 * p - 1) / Math.sqrt(2 * p * (1 - p));
+        }
+        double z = NormalQuantile(p);
+        double n = degreesOfFreedom;
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        double z7 = z5 * z * z;
+        return z + (z3 + z) / (4 * n)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * n * n)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * n * n * n);
+    }
+
+    /**
+     * Quantile of the standard normal distribution (Acklam's rational
+     * approximation, relative error below 1.2e-9).
+     */
+    static double NormalQuantile(double p) {
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+            3.754408661907416e+00};
+        double low = 0.02425;
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            return -NormalQuantile(1 - p);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+}
@@ -0,0 +1,119 @@
+package desmoj.tutorial1.EventsExample;
+
+/**
+ * Everything that distinguishes one simulation run from another: the CHO,
+ * the first simulated year and the number of years, the arrival process, the
+ * replication number and the seed of the experiment's random streams. Every
+ * EventsExample instance holds its own configuration, so several models can
+ * run side by side in one JVM.
+ */
+public final class ScenarioConfig {
+
+    /** CHO of a scenario that simulates all CHOs in one model */
+    public static final String ALL_CHOS = "ALL";
+
+    private final String cho;
+    private final String simYear;
+    private final int replication;
+    private final long seed;
+    private final boolean lightweight;
+    private final ArrivalProcess.Mode arrivalMode;
+    private final int horizonYears;
+
+    /**
+     * Creates a one-year scenario with evenly spaced arrivals.
+     */
+    public ScenarioConfig(String cho, String simYear, int replication, long seed, boolean lightweight) {
+        this(cho, simYear, replication, seed, lightweight, ArrivalProcess.Mode.CONSTANT, 1);
+    }
+
+    /**
+     * @param cho the CHO to simulate, e.g. "CHO4", or ALL_CHOS
+     * @param simYear the year whose population is simulated, e.g. "2026"
+     * @param replication number of this replication of the (CHO, year) pair
+     * @param seed seed of the experiment's seed generator
+     * @param lightweight generate plain patient records instead of entities
+     * @param arrivalMode how the patient arrivals are spaced
+     * @param horizonYears number of simulated years, starting with simYear
+     */
+    public ScenarioConfig(String cho, String simYear, int replication, long seed, boolean lightweight,
+            ArrivalProcess.Mode arrivalMode, int horizonYears) {
+        this.cho = cho;
+        this.simYear = simYear;
+        this.replication = replication;
+        this.seed = seed;
+        this.lightweight = lightweight;
+        this.arrivalMode = arrivalMode;
+        this.horizonYears = Math.max(1, horizonYears);
+    }
+
+    /**
+     * @return the scenario set up in GlobalObjects, used by main()
+     */
+    public static ScenarioConfig FromGlobals() {
+        return new ScenarioConfig(GlobalObjects.simCHO, GlobalObjects.simYear, 0,
+                GlobalObjects.seed, GlobalObjects.lightweightPatients, GlobalObjects.arrivalMode,
+                GlobalObjects.horizonYears);
+    }
+
+    public String getCHO() {
+        return cho;
+    }
+
+    /**
+     * @return whether one model simulates every CHO of the scenario tables,
+     * each with its own generators and hospital and residence distributions
+     */
+    public boolean isAllCHOs() {
+        return ALL_CHOS.equals(cho);
+    }
+
+    public String getSimYear() {
+        return simYear;
+    }
+
+    public int getSimYearAsInt() {
+        return Integer.parseInt(simYear);
+    }
+
+    /**
+     * @return the simulated year at the given simulation time in minutes,
+     * e.g. simYear + 1 during the second year of the horizon
+     */
+    public int getSimYearAt(double minutes) {
+        return getSimYearAsInt() + (int) (minutes / ArrivalProcess.MINUTES_PER_YEAR);
+    }
+
+    public int getReplication() {
+        return replication;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean isLightweight() {
+        return lightweight;
+    }
+
+    public ArrivalProcess.Mode getArrivalMode() {
+        return arrivalMode;
+    }
+
+    public int getHorizonYears() {
+        return horizonYears;
+    }
+
+    /**
+     * @return a name usable for experiments and output files
+     */
+    public String getName() {
+        return cho + "_" + simYear + "_R" + replication;
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+}
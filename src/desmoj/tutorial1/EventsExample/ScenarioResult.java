@@ -0,0 +1,57 @@
+package desmoj.tutorial1.EventsExample;
+
+/**
+ * Outcome of one scenario run by the ScenarioRunner.
+ */
+public final class ScenarioResult {
+
+    private final ScenarioConfig scenario;
+    private final long patientCount;
+    private final long wallTimeMillis;
+    private final PatientStatistics statistics;
+    private final Throwable failure;
+
+    public ScenarioResult(ScenarioConfig scenario, long patientCount, long wallTimeMillis,
+            PatientStatistics statistics, Throwable failure) {
+        this.scenario = scenario;
+        this.patientCount = patientCount;
+        this.wallTimeMillis = wallTimeMillis;
+        this.statistics = statistics;
+        this.failure = failure;
+    }
+
+    public ScenarioConfig getScenario() {
+        return scenario;
+    }
+
+    /** @return number of patients handed to the scenario's sink */
+    public long getPatientCount() {
+        return patientCount;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    /** @return the patient counters of the scenario's model */
+    public PatientStatistics getStatistics() {
+        return statistics;
+    }
+
+    /** @return the exception that aborted the run, or null */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    @Override
+    public String toString() {
+        return scenario.getName() + ": " + (isSuccessful()
+                ? patientCount + " patients in " + wallTimeMillis + " ms"
+                : "failed with " + failure);
+    }
+
+}
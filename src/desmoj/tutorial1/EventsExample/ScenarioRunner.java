@@ -0,0 +1,174 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.simulator.Experiment;
+import desmoj.core.simulator.TimeInstant;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs a grid of (CHO, year, replication) scenarios as independent
+ * EventsExample experiments on a thread pool.
+ *
+ * Every scenario gets its own model, experiment and sink; nothing is shared
+ * between runs except the sink factory, which is called once per scenario on
+ * the worker thread.
+ *
+ * The files DESMO-J writes for an experiment go to
+ * GlobalObjects.experimentOutputDir instead of the working directory. The
+ * report of a scenario is only written with GlobalObjects.scenarioReports.
+ */
+public class ScenarioRunner {
+
+    private final int threads;
+    private final Function<ScenarioConfig, PatientSink> sinkFactory;
+
+    /**
+     * @param threads number of scenarios simulated at the same time
+     * @param sinkFactory creates the patient sink of a scenario
+     */
+    public ScenarioRunner(int threads, Function<ScenarioConfig, PatientSink> sinkFactory) {
+        this.threads = Math.max(1, threads);
+        this.sinkFactory = sinkFactory;
+    }
+
+    /**
+     * Builds the full grid of scenarios with the arrival mode and horizon of
+     * GlobalObjects.
+     */
+    public static List<ScenarioConfig> Grid(List<String> chos, List<String> years, int replications,
+            long baseSeed, boolean lightweight) {
+        return Grid(chos, years, replications, baseSeed, lightweight, GlobalObjects.arrivalMode,
+                GlobalObjects.horizonYears);
+    }
+
+    /**
+     * Builds the full grid of scenarios. Every scenario gets a distinct seed
+     * derived from baseSeed.
+     */
+    public static List<ScenarioConfig> Grid(List<String> chos, List<String> years, int replications,
+            long baseSeed, boolean lightweight, ArrivalProcess.Mode arrivalMode, int horizonYears) {
+        List<ScenarioConfig> scenarios = new ArrayList<>();
+        for (String cho : chos) {
+            for (String year : years) {
+                for (int replication = 0; replication < replications; replication++) {
+                    long seed = baseSeed + 1_000_003L * scenarios.size();
+                    scenarios.add(new ScenarioConfig(cho, year, replication, seed, lightweight, arrivalMode,
+                            horizonYears));
+                }
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * Runs all scenarios and waits for them to finish. Results are returned
+     * in the order of the given scenarios; a failing scenario does not stop
+     * the others.
+     */
+    public List<ScenarioResult> RunAll(List<ScenarioConfig> scenarios) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, scenarios.size())));
+        try {
+            List<Future<ScenarioResult>> futures = new ArrayList<>(scenarios.size());
+            for (ScenarioConfig scenario : scenarios) {
+                futures.add(pool.submit(() -> Run(scenario, sinkFactory.apply(scenario))));
+            }
+            List<ScenarioResult> results = new ArrayList<>(scenarios.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new ScenarioResult(scenarios.get(i), 0, 0, new PatientStatistics(), e.getCause()));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Simulates the horizon of the given scenario without trace and debug
+     * output and closes the sink afterwards. The experiment is finished
+     * even if the run fails, so that its output files are closed.
+     */
+    public static ScenarioResult Run(ScenarioConfig scenario, PatientSink sink) {
+        long start = System.currentTimeMillis();
+        CountingPatientSink counter = new CountingPatientSink(sink);
+        EventsExample model = new EventsExample(null, scenario.getName(), GlobalObjects.scenarioReports, false,
+                scenario, counter);
+        Experiment exp = null;
+        try {
+            exp = CreateExperiment(scenario.getName());
+            model.connectToExperiment(exp);
+            exp.setSeedGenerator(scenario.getSeed());
+            exp.setShowProgressBar(false);
+            exp.stop(new TimeInstant(365 * scenario.getHorizonYears(), TimeUnit.DAYS));
+            exp.start();
+            if (GlobalObjects.scenarioReports) {
+                exp.report();
+            }
+        } catch (RuntimeException e) {
+            return new ScenarioResult(scenario, counter.getCount(), System.currentTimeMillis() - start,
+                    model.getStatistics(), e);
+        } finally {
+            try {
+                if (exp != null) {
+                    exp.finish();
+                }
+            } finally {
+                counter.Close();
+            }
+        }
+        return new ScenarioResult(scenario, counter.getCount(), System.currentTimeMillis() - start,
+                model.getStatistics(), null);
+    }
+
+    /**
+     * @return an experiment with the time units of EventsExample whose
+     * output files are written to GlobalObjects.experimentOutputDir, which
+     * is created if necessary
+     */
+    static Experiment CreateExperiment(String name) {
+        Path directory = Paths.get(GlobalObjects.experimentOutputDir);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Experiment(name, directory.toString(), TimeUnit.SECONDS, TimeUnit.MINUTES, null);
+    }
+
+    /**
+     * Runs all CHOs for the given years (default: every projected year) on
+     * all cores, counting the patients only.
+     *
+     * @param args years to simulate, e.g. 2016 2017
+     */
+    public static void main(String[] args) throws InterruptedException {
+        List<String> chos = Arrays.asList("CHO1", "CHO2", "CHO3", "CHO4", "CHO5", "CHO6", "CHO7", "CHO8", "CHO9");
+        List<String> years = args.length > 0 ? Arrays.asList(args)
+                : Arrays.asList("2016", "2017", "2018", "2019", "2020", "2021", "2022", "2023", "2024", "2025", "2026");
+        List<ScenarioConfig> scenarios = Grid(chos, years, 1, GlobalObjects.seed, true);
+        ScenarioRunner runner = new ScenarioRunner(Runtime.getRuntime().availableProcessors(),
+                scenario -> new CountingPatientSink());
+        PatientStatistics total = new PatientStatistics();
+        for (ScenarioResult result : runner.RunAll(scenarios)) {
+            System.out.println(result);
+            total.Merge(result.getStatistics());
+        }
+        System.out.print(total.Report());
+    }
+
+}
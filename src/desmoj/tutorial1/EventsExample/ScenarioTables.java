@@ -0,0 +1,445 @@
+package desmoj.tutorial1.EventsExample;
+
+import desmoj.core.dist.DiscreteDistEmpirical;
+import desmoj.core.simulator.Model;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The input data of the hip fracture model: elderly populations per year,
+ * CHO population shares, hospital and residence frequencies per CHO, and the
+ * age, fragility, fracture type and diagnosis frequencies.
+ *
+ * The tables do not depend on a model or experiment, so the event-driven
+ * EventsExample and the CohortGenerator build their samplers from the same
+ * data. They are read from a versioned text file (see scenario-tables.txt
+ * next to this class for the format), parsed once per JVM and source, and
+ * kept in sorted primitive arrays. Instances are immutable and shared by all
+ * models and threads.
+ */
+public final class ScenarioTables {
+
+    /** hip fractures per elderly male and year (140 per 100K) */
+    public static final double MALE_FRACTURE_RATE = 140.0 / 100000.0;
+    /** hip fractures per elderly female and year (407 per 100K) */
+    public static final double FEMALE_FRACTURE_RATE = 407.0 / 100000.0;
+
+    /**
+     * An empirical frequency table over int values.
+     */
+    public static final class Frequencies {
+
+        private final int[] values;
+        private final double[] frequencies;
+
+        public Frequencies(int[] values, double[] frequencies) {
+            if (values.length != frequencies.length) {
+                throw new IllegalArgumentException("Expected one frequency per value");
+            }
+            this.values = values.clone();
+            this.frequencies = frequencies.clone();
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public int getValue(int index) {
+            return values[index];
+        }
+
+        public double getFrequency(int index) {
+            return frequencies[index];
+        }
+
+        public AliasSampler Sampler(long seed) {
+            return new AliasSampler(values, frequencies, seed);
+        }
+
+        /**
+         * @return a DESMO-J distribution over the same entries, e.g. for the
+         * report or to obtain a seed from the experiment's seed generator
+         */
+        @SuppressWarnings("unchecked")
+        public DiscreteDistEmpirical ToDistribution(Model owner, String name) {
+            DiscreteDistEmpirical distribution = new DiscreteDistEmpirical(owner, name, false, false);
+            for (int i = 0; i < values.length; i++) {
+                distribution.addEntry(values[i], frequencies[i]);
+            }
+            return distribution;
+        }
+    }
+
+    /** version of the table file format understood by Parse */
+    public static final int FORMAT_VERSION = 1;
+    /** the built-in tables, next to this class on the classpath */
+    public static final String DEFAULT_RESOURCE = "scenario-tables.txt";
+
+    private static final ConcurrentMap<String, ScenarioTables> loaded = new ConcurrentHashMap<>();
+
+    private final String[] chos;// sorted
+    private final double[] choPercent;
+    private final Frequencies[] hospitals;// indexed like chos
+    private final Frequencies[] residences;
+    private final int[] years;// sorted
+    private final double[] malePopulation;
+    private final double[] femalePopulation;
+    private final Frequencies age;
+    private final Frequencies fragility;
+    private final Frequencies fractureType;
+    private final Frequencies diagnosis;
+    private final String[] diagnosisCodes;
+
+    private ScenarioTables(Parser p) {
+        chos = p.choPercent.keySet().toArray(new String[0]);
+        choPercent = new double[chos.length];
+        hospitals = new Frequencies[chos.length];
+        residences = new Frequencies[chos.length];
+        for (int i = 0; i < chos.length; i++) {
+            choPercent[i] = p.choPercent.get(chos[i]);
+            hospitals[i] = p.hospitals.get(chos[i]);
+            residences[i] = p.residences.get(chos[i]);
+        }
+        years = new int[p.populations.size()];
+        malePopulation = new double[years.length];
+        femalePopulation = new double[years.length];
+        int k = 0;
+        for (Map.Entry<Integer, double[]> entry : p.populations.entrySet()) {
+            years[k] = entry.getKey();
+            malePopulation[k] = entry.getValue()[0];
+            femalePopulation[k] = entry.getValue()[1];
+            k++;
+        }
+        age = p.age;
+        fragility = p.fragility;
+        fractureType = p.fractureType;
+        diagnosis = new Frequencies(p.diagnosis.getValues(), p.diagnosis.getFrequencies());
+        diagnosisCodes = new String[p.maxDiagnosisID + 1];
+        for (Map.Entry<Integer, String> entry : p.diagnosisCodes.entrySet()) {
+            diagnosisCodes[entry.getKey()] = entry.getValue();
+        }
+    }
+
+    /**
+     * @return the tables of GlobalObjects.scenarioTablesFile, or the built-in
+     * tables of the SIGSIM 2016 model if it is null; parsed once per JVM
+     */
+    public static ScenarioTables Default() {
+        String file = GlobalObjects.scenarioTablesFile;
+        if (file != null) {
+            return Load(Paths.get(file));
+        }
+        return loaded.computeIfAbsent("resource:" + DEFAULT_RESOURCE, key -> {
+            try (InputStream in = ScenarioTables.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+                if (in == null) {
+                    throw new IllegalStateException("Missing resource " + DEFAULT_RESOURCE);
+                }
+                return Parse(in, DEFAULT_RESOURCE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * @return the tables of the given file, parsed on the first call and
+     * shared by all later calls for the same file
+     */
+    public static ScenarioTables Load(Path file) {
+        return loaded.computeIfAbsent(file.toAbsolutePath().normalize().toString(), key -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                return Parse(in, file.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Parses a table file without caching it.
+     *
+     * @param source name of the input used in error messages
+     * @throws IllegalArgumentException if the input is malformed or of
+     * another format version
+     */
+    public static ScenarioTables Parse(InputStream in, String source) throws IOException {
+        Parser parser = new Parser(source);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            parser.Line(line);
+        }
+        return new ScenarioTables(parser.Check());
+    }
+
+    public double getChoPercent(String cho) {
+        return choPercent[ChoIndex(cho)];
+    }
+
+    /** @return all CHOs, sorted */
+    public SortedSet<String> getCHOs() {
+        return new TreeSet<>(Arrays.asList(chos));
+    }
+
+    /** @return the years of the population table, ascending */
+    public int[] getYears() {
+        return years.clone();
+    }
+
+    /**
+     * Elderly population of the given year and sex (0 male, 1 female).
+     * Years missing from the population table are interpolated linearly
+     * between the neighbouring years; years outside the table use its first
+     * or last year.
+     */
+    public double ElderlyPopulation(int year, int sex) {
+        double[] population = sex == 0 ? malePopulation : femalePopulation;
+        int i = Arrays.binarySearch(years, year);
+        if (i >= 0) {
+            return population[i];
+        }
+        int above = -i - 1;
+        if (above == 0) {
+            return population[0];
+        }
+        if (above == years.length) {
+            return population[years.length - 1];
+        }
+        int below = above - 1;
+        return population[below]
+                + (population[above] - population[below]) * (year - years[below]) / (years[above] - years[below]);
+    }
+
+    /**
+     * @return expected hip fracture cases of the given CHO and sex (0 male,
+     * 1 female) in each of the given number of years from firstYear on
+     */
+    public double[] CasesPerYear(String cho, int firstYear, int years, int sex) {
+        double choPopulationPercent = getChoPercent(cho) / 100.0;//CHO percent of the total elderly population
+        double fractureRate = sex == 0 ? MALE_FRACTURE_RATE : FEMALE_FRACTURE_RATE;
+        double[] cases = new double[years];
+        for (int k = 0; k < years; k++) {
+            cases[k] = Math.round(ElderlyPopulation(firstYear + k, sex) * choPopulationPercent * fractureRate);
+        }
+        return cases;
+    }
+
+    public Frequencies getHospitals(String cho) {
+        return hospitals[ChoIndex(cho)];
+    }
+
+    public Frequencies getResidences(String cho) {
+        return residences[ChoIndex(cho)];
+    }
+
+    public Frequencies getAge() {
+        return age;
+    }
+
+    public Frequencies getFragility() {
+        return fragility;
+    }
+
+    public Frequencies getFractureType() {
+        return fractureType;
+    }
+
+    public Frequencies getDiagnosis() {
+        return diagnosis;
+    }
+
+    /** @return interned diagnosis codes indexed by diagnosis ID */
+    public String[] getDiagnosisCodes() {
+        return diagnosisCodes.clone();
+    }
+
+    /** @return the code of the given diagnosis ID */
+    public String getDiagnosisCode(int diagID) {
+        return diagnosisCodes[diagID];
+    }
+
+    private int ChoIndex(String cho) {
+        int i = Arrays.binarySearch(chos, cho);
+        if (i < 0) {
+            throw new IllegalArgumentException("Unknown CHO " + cho);
+        }
+        return i;
+    }
+
+    /**
+     * Collects the entries of a table file. Every entry kind is checked
+     * where it is read; Check() verifies that the tables are complete.
+     */
+    private static final class Parser {
+
+        private final String source;
+        private int lineNumber = 0;
+        private int version = -1;
+        private final SortedMap<String, Double> choPercent = new TreeMap<>();
+        private final SortedMap<Integer, double[]> populations = new TreeMap<>();
+        private final Map<String, Frequencies> hospitals = new HashMap<>();
+        private final Map<String, Frequencies> residences = new HashMap<>();
+        private Frequencies age;
+        private Frequencies fragility;
+        private Frequencies fractureType;
+        private final AliasSampler.Builder diagnosis = new AliasSampler.Builder();
+        private final Map<Integer, String> diagnosisCodes = new HashMap<>();
+        private int maxDiagnosisID = 0;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        void Line(String line) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] f = line.trim().split("\\s+");
+            if (f[0].isEmpty()) {
+                return;
+            }
+            if (version < 0 && !f[0].equals("version")) {
+                throw ParseError("Expected the format version first");
+            }
+            switch (f[0]) {
+                case "version":
+                    CheckFields(f, 2);
+                    version = ParseInt(f[1]);
+                    if (version != FORMAT_VERSION) {
+                        throw ParseError("Unsupported format version " + version + ", expected " + FORMAT_VERSION);
+                    }
+                    break;
+                case "cho":
+                    CheckFields(f, 3);
+                    if (choPercent.put(f[1], ParseDouble(f[2])) != null) {
+                        throw ParseError("Duplicate CHO " + f[1]);
+                    }
+                    break;
+                case "population":
+                    CheckFields(f, 4);
+                    if (populations.put(ParseInt(f[1]), new double[]{ParseDouble(f[2]), ParseDouble(f[3])}) != null) {
+                        throw ParseError("Duplicate population year " + f[1]);
+                    }
+                    break;
+                case "hospitals":
+                    CheckCHO(f);
+                    if (hospitals.put(f[1], ParseFrequencies(f, 2)) != null) {
+                        throw ParseError("Duplicate hospitals of " + f[1]);
+                    }
+                    break;
+                case "residences":
+                    CheckCHO(f);
+                    if (residences.put(f[1], ParseFrequencies(f, 2)) != null) {
+                        throw ParseError("Duplicate residences of " + f[1]);
+                    }
+                    break;
+                case "age":
+                    age = ParseFrequencies(f, 1);
+                    break;
+                case "fragility":
+                    fragility = ParseFrequencies(f, 1);
+                    break;
+                case "fracturetype":
+                    fractureType = ParseFrequencies(f, 1);
+                    break;
+                case "diagnosis":
+                    CheckFields(f, 4);
+                    int diagID = ParseInt(f[2]);
+                    if (diagID < 0 || diagnosisCodes.put(diagID, f[1].intern()) != null) {
+                        throw ParseError("Invalid or duplicate diagnosis ID " + diagID);
+                    }
+                    diagnosis.add(diagID, ParseDouble(f[3]));
+                    maxDiagnosisID = Math.max(maxDiagnosisID, diagID);
+                    break;
+                default:
+                    throw ParseError("Unknown entry " + f[0]);
+            }
+        }
+
+        Parser Check() {
+            if (version < 0) {
+                throw new IllegalArgumentException(source + ": empty table file");
+            }
+            if (choPercent.isEmpty() || populations.isEmpty() || age == null || fragility == null
+                    || fractureType == null || diagnosisCodes.isEmpty()) {
+                throw new IllegalArgumentException(source + ": incomplete tables");
+            }
+            for (String cho : choPercent.keySet()) {
+                if (!hospitals.containsKey(cho) || !residences.containsKey(cho)) {
+                    throw new IllegalArgumentException(source + ": no hospitals or residences for " + cho);
+                }
+            }
+            return this;
+        }
+
+        /** id:frequency pairs from field first on */
+        private Frequencies ParseFrequencies(String[] f, int first) {
+            if (f.length <= first) {
+                throw ParseError("Expected id:frequency pairs");
+            }
+            int[] values = new int[f.length - first];
+            double[] frequencies = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                String pair = f[first + i];
+                int colon = pair.indexOf(':');
+                if (colon < 0) {
+                    throw ParseError("Expected id:frequency, found " + pair);
+                }
+                values[i] = ParseInt(pair.substring(0, colon));
+                frequencies[i] = ParseDouble(pair.substring(colon + 1));
+            }
+            return new Frequencies(values, frequencies);
+        }
+
+        private void CheckCHO(String[] f) {
+            if (f.length < 2) {
+                throw ParseError("Expected a CHO after " + f[0]);
+            }
+        }
+
+        private void CheckFields(String[] f, int count) {
+            if (f.length != count) {
+                throw ParseError("Expected " + (count - 1) + " values after " + f[0]);
+            }
+        }
+
+        private int ParseInt(String s) {
+            try {
+                return Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                throw ParseError("Not an integer: " + s);
+            }
+        }
+
+        private double ParseDouble(String s) {
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                throw ParseError("Not a number: " + s);
+            }
+        }
+
+        private IllegalArgumentException ParseError(String message) {
+            return new IllegalArgumentException(source + ":" + lineNumber + ": " + message);
+        }
+    }
+
+}
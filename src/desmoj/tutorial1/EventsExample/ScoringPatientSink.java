@@ -0,0 +1,153 @@
+package desmoj.tutorial1.EventsExample;
+
+/**
+ * Predicts the length of stay and discharge destination of every patient
+ * with a LosModel and passes the scored records on to another sink.
+ *
+ * Patients are collected into primitive feature columns and scored in
+ * micro-batches of batchSize, so the model runs in tight loops over arrays
+ * instead of once per generator event. The predictions are stored in the
+ * records themselves, which the target sinks persist with the patient.
+ * The scored records reach the target at most batchSize patients late;
+ * Flush() scores a partial batch. The sink also keeps the number of
+ * patients and the summed length of stay per destination for the
+ * end-of-run summary.
+ *
+ * A ScoringPatientSink is not thread safe, like the sinks it feeds.
+ */
+public class ScoringPatientSink implements PatientSink {
+
+    private final LosModel model;
+    private final PatientSink target;
+    private final PatientRecord[] batch;
+    private final int[][] features = new int[LosModel.FEATURES.length][];
+    private final double[] los;
+    private final int[] destination;
+    private final double[] scratch;
+    private final double[] best;
+    private final long[] destinationCounts;
+    private final double[] destinationLos;
+    private int rows = 0;
+
+    /**
+     * @param model the exported LOS and destination model
+     * @param target sink that receives the scored records, or null
+     * @param batchSize number of patients scored together
+     */
+    public ScoringPatientSink(LosModel model, PatientSink target, int batchSize) {
+        this.model = model;
+        this.target = target;
+        int size = Math.max(1, batchSize);
+        this.batch = new PatientRecord[size];
+        for (int feature = 0; feature < features.length; feature++) {
+            features[feature] = new int[size];
+        }
+        this.los = new double[size];
+        this.destination = new int[size];
+        this.scratch = new double[size];
+        this.best = new double[size];
+        this.destinationCounts = new long[model.getDestinations().length + 1];
+        this.destinationLos = new double[destinationCounts.length];
+    }
+
+    /**
+     * Queues the patient for the next batch. A patient that is already
+     * scored, i.e. by EventsExample.Admit(), is passed on with its
+     * predictions after the patients queued before it.
+     */
+    @Override
+    public void InsertPatient(PatientRecord patient) {
+        if (patient.isScored()) {
+            if (rows > 0) {
+                ScoreBatch();
+            }
+            Count(patient.getDestination(), patient.getPredictedLOS());
+            if (target != null) {
+                target.InsertPatient(patient);
+            }
+            return;
+        }
+        batch[rows] = patient;
+        features[LosModel.HOSPITAL][rows] = patient.Hospital;
+        features[LosModel.SEX][rows] = patient.Sex;
+        features[LosModel.RESID][rows] = patient.ResID;
+        features[LosModel.AGE][rows] = patient.Age;
+        features[LosModel.DIAG1][rows] = model.DiagnosisValue(patient.Diag1);
+        features[LosModel.FRACTYPE][rows] = patient.FracType;
+        features[LosModel.FRAGILITY][rows] = patient.Fragility;
+        if (++rows == batch.length) {
+            ScoreBatch();
+        }
+    }
+
+    @Override
+    public void Flush() {
+        if (rows > 0) {
+            ScoreBatch();
+        }
+        if (target != null) {
+            target.Flush();
+        }
+    }
+
+    @Override
+    public void Close() {
+        if (rows > 0) {
+            ScoreBatch();
+        }
+        if (target != null) {
+            target.Close();
+        }
+    }
+
+    public LosModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return number of scored patients sent to the given destination
+     */
+    public long getCount(int destination) {
+        return destinationCounts[destination];
+    }
+
+    /**
+     * @return mean predicted length of stay in days of the patients sent to
+     * the given destination, NaN if there are none
+     */
+    public double getMeanLos(int destination) {
+        return destinationCounts[destination] == 0 ? Double.NaN
+                : destinationLos[destination] / destinationCounts[destination];
+    }
+
+    /**
+     * @return one line per destination with its patient count and mean LOS
+     */
+    public String Summary() {
+        StringBuilder summary = new StringBuilder();
+        for (int d = 1; d < destinationCounts.length; d++) {
+            summary.append(String.format("%-24s %10d  mean LOS %6.2f days%n", model.getDestination(d),
+                    destinationCounts[d], getMeanLos(d)));
+        }
+        return summary.toString();
+    }
+
+    private void ScoreBatch() {
+        model.Score(rows, features, los, destination, scratch, best);
+        for (int i = 0; i < rows; i++) {
+            Count(destination[i], los[i]);
+            batch[i].SetPrediction(los[i], destination[i]);
+            if (target != null) {
+                target.InsertPatient(batch[i]);
+            }
+            batch[i] = null;
+        }
+        rows = 0;
+    }
+
+    private void Count(int destination, double los) {
+        destinationCounts[destination]++;
+        destinationLos[destination] += los;
+    }
+
+}
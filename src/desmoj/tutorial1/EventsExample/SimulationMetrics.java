@@ -0,0 +1,265 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live throughput and persistence metrics of one model.
+ *
+ * The generator events report every event and generated patient; a
+ * DBHandler fills the batch latency histogram (see
+ * DBHandler.setBatchLatency()) and an AsyncPatientWriter, if attached,
+ * provides the queue depth. The numbers are published as an MXBean and can
+ * be appended to a log file periodically, so a slow sweep shows whether it
+ * is bound by sampling (high events/sec, deep queue) or by persistence
+ * (high batch latency). The latency is per batch of dbBatchSize rows, not
+ * per row.
+ */
+public class SimulationMetrics implements SimulationMetricsMXBean {
+
+    private final String name;
+    private final LongAdder events = new LongAdder();
+    private volatile LongAdder[][] patients = new LongAdder[0][];// [region index][male, female]
+    private volatile String[] chos = new String[0];// region index -> CHO
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private final long startNanos = System.nanoTime();
+    private volatile double simulatedMinutes = 0;
+    private volatile AsyncPatientWriter writer;
+    private ObjectName objectName;
+    private ScheduledExecutorService logger;
+
+    public SimulationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Called by the generator events for every event routine.
+     */
+    public void EventProcessed(double simulatedMinutes) {
+        events.increment();
+        this.simulatedMinutes = simulatedMinutes;
+    }
+
+    /**
+     * Called by the generator events for every patient. The counters are
+     * indexed by region and sex; their names are only built when the
+     * counts are published.
+     */
+    public void PatientGenerated(ChoRegion region, int sex) {
+        LongAdder[][] current = patients;
+        int index = region.getIndex();
+        LongAdder[] counts = index < current.length ? current[index] : null;
+        if (counts == null) {
+            counts = AddRegion(region);
+        }
+        counts[sex == 1 ? 0 : 1].increment();
+    }
+
+    public LatencyHistogram getBatchLatency() {
+        return batchLatency;
+    }
+
+    public void setWriter(AsyncPatientWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? events.sum() / seconds : 0;
+    }
+
+    @Override
+    public double getSimulatedMinutes() {
+        return simulatedMinutes;
+    }
+
+    @Override
+    public double getSimToWallRatio() {
+        double wallMinutes = (System.nanoTime() - startNanos) / 60e9;
+        return wallMinutes > 0 ? simulatedMinutes / wallMinutes : 0;
+    }
+
+    @Override
+    public Map<String, Long> getPatientCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        LongAdder[][] current = patients;
+        String[] names = chos;
+        for (int region = 0; region < current.length; region++) {
+            if (current[region] == null) {
+                continue;
+            }
+            for (int sex = 0; sex < 2; sex++) {
+                long count = current[region][sex].sum();
+                if (count > 0) {
+                    counts.put(names[region] + (sex == 0 ? "/Male" : "/Female"), count);
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int getSinkQueueDepth() {
+        AsyncPatientWriter current = writer;
+        return current == null ? -1 : current.getQueueDepth();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batchLatency.getCount();
+    }
+
+    @Override
+    public double getBatchLatencyP50Micros() {
+        return batchLatency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getBatchLatencyP99Micros() {
+        return batchLatency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getBatchLatencyMaxMicros() {
+        return batchLatency.getPercentile(100) / 1000.0;
+    }
+
+    /**
+     * Registers this object with the platform MBean server as
+     * desmoj.tutorial1.EventsExample:type=SimulationMetrics,name=...
+     */
+    public void RegisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("desmoj.tutorial1.EventsExample:type=SimulationMetrics,name="
+                    + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics of " + name, e);
+        }
+    }
+
+    /**
+     * Appends a line with all metrics to the given file now and every period
+     * seconds until Stop() is called. If a later write fails, the failure is
+     * reported once and the log stops.
+     *
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public void StartLog(Path file, long periodSeconds) {
+        try {
+            AppendLine(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the metrics log " + file, e);
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Metrics Log " + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                AppendLine(file);
+            } catch (IOException e) {
+                System.err.println("Metrics log " + file + " stopped: " + e);
+                executor.shutdown();
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        logger = executor;
+    }
+
+    /**
+     * Stops the periodic log (writing one last line to it, unless it stopped
+     * after a failed write) and unregisters the MBean.
+     */
+    public void Stop(Path file) {
+        if (logger != null) {
+            boolean running = !logger.isShutdown();
+            logger.shutdownNow();
+            logger = null;
+            if (file != null && running) {
+                try {
+                    AppendLine(file);
+                } catch (IOException e) {
+                    System.err.println("Metrics log " + file + " stopped: " + e);
+                }
+            }
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // already gone
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return all metrics as space separated key=value pairs
+     */
+    public String Summary() {
+        StringBuilder line = new StringBuilder();
+        line.append("model=").append(name)
+                .append(" events=").append(getEventCount())
+                .append(String.format(" eventsPerSec=%.1f simMinutes=%.1f simToWall=%.1f",
+                        getEventsPerSecond(), getSimulatedMinutes(), getSimToWallRatio()))
+                .append(" queueDepth=").append(getSinkQueueDepth())
+                .append(" batches=").append(getBatchCount())
+                .append(String.format(" batchP50us=%.1f batchP99us=%.1f batchMaxUs=%.1f",
+                        getBatchLatencyP50Micros(), getBatchLatencyP99Micros(), getBatchLatencyMaxMicros()));
+        for (Map.Entry<String, Long> count : getPatientCounts().entrySet()) {
+            line.append(" patients[").append(count.getKey()).append("]=").append(count.getValue());
+        }
+        return line.toString();
+    }
+
+    /**
+     * Adds the counters of the given region; the arrays are replaced rather
+     * than changed, so PatientGenerated() reads them without locking.
+     */
+    private synchronized LongAdder[] AddRegion(ChoRegion region) {
+        int index = region.getIndex();
+        LongAdder[][] current = patients;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        LongAdder[][] grown = Arrays.copyOf(current, Math.max(current.length, index + 1));
+        String[] names = Arrays.copyOf(chos, grown.length);
+        grown[index] = new LongAdder[]{new LongAdder(), new LongAdder()};
+        names[index] = region.getCHO();
+        chos = names;
+        patients = grown;
+        return grown[index];
+    }
+
+    private void AppendLine(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(System.currentTimeMillis() + " " + Summary() + System.lineSeparator());
+        }
+    }
+
+}
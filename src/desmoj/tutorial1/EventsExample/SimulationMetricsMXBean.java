@@ -0,0 +1,35 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.util.Map;
+
+/**
+ * JMX view of a running EventsExample model, see SimulationMetrics.
+ */
+public interface SimulationMetricsMXBean {
+
+    long getEventCount();
+
+    double getEventsPerSecond();
+
+    double getSimulatedMinutes();
+
+    /** @return simulated minutes per wall-clock minute */
+    double getSimToWallRatio();
+
+    /** @return generated patients keyed "CHO/Male" or "CHO/Female" */
+    Map<String, Long> getPatientCounts();
+
+    /** @return records waiting in the write-behind queue, -1 without one */
+    int getSinkQueueDepth();
+
+    /** @return number of database batches sent */
+    long getBatchCount();
+
+    /** @return median time to send (and commit) one database batch */
+    double getBatchLatencyP50Micros();
+
+    double getBatchLatencyP99Micros();
+
+    double getBatchLatencyMaxMicros();
+
+}
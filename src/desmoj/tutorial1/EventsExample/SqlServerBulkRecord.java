@@ -0,0 +1,108 @@
+package desmoj.tutorial1.EventsExample;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkRecord;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Presents staged patients as the source of a SQL Server bulk copy. Kept
+ * apart from BulkPatientLoader so that the SQL Server driver classes are
+ * only needed when the bulk copy API is actually used.
+ */
+final class SqlServerBulkRecord implements ISQLServerBulkRecord {
+
+    private static final int[] TYPES = {Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER,
+        Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.INTEGER, Types.DOUBLE, Types.INTEGER,
+        Types.VARCHAR};
+    private static final int[] PRECISIONS = {0, 0, 0, 0, 10, 0, 0, 10, 0, 0, 0, 64};
+
+    private final Iterator<PatientRecord> patients;
+    private final String runID;
+    private PatientRecord current;
+
+    private SqlServerBulkRecord(List<PatientRecord> patients, String runID) {
+        this.patients = patients.iterator();
+        this.runID = runID;
+    }
+
+    /**
+     * Bulk copies the given patients into LOSPredictions within the current
+     * transaction of the connection.
+     */
+    static void WriteToServer(Connection con, List<PatientRecord> patients, String runID, int batchSize)
+            throws SQLException {
+        SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(con);
+        try {
+            SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+            options.setBatchSize(batchSize);
+            bulkCopy.setBulkCopyOptions(options);
+            bulkCopy.setDestinationTableName(BulkPatientLoader.TABLE);
+            for (int i = 0; i < BulkPatientLoader.COLUMNS.length; i++) {
+                bulkCopy.addColumnMapping(i + 1, BulkPatientLoader.COLUMNS[i]);
+            }
+            bulkCopy.writeToServer(new SqlServerBulkRecord(patients, runID));
+        } finally {
+            bulkCopy.close();
+        }
+    }
+
+    @Override
+    public Set<Integer> getColumnOrdinals() {
+        Set<Integer> ordinals = new LinkedHashSet<>();
+        for (int i = 1; i <= TYPES.length; i++) {
+            ordinals.add(i);
+        }
+        return ordinals;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return BulkPatientLoader.COLUMNS[column - 1];
+    }
+
+    @Override
+    public int getColumnType(int column) {
+        return TYPES[column - 1];
+    }
+
+    @Override
+    public int getPrecision(int column) {
+        return PRECISIONS[column - 1];
+    }
+
+    @Override
+    public int getScale(int column) {
+        return 0;
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) {
+        return false;
+    }
+
+    @Override
+    public Object[] getRowData() {
+        PatientRecord p = current;
+        Object los = p.isScored() ? p.getPredictedLOS() : null;
+        Object destination = p.isScored() ? p.getDestination() : null;
+        return new Object[]{p.Hospital, p.Sex, p.ResID, p.Age, p.Diag1, p.FracType, p.Fragility, p.CHO,
+            p.SimYear, los, destination, runID};
+    }
+
+    @Override
+    public boolean next() {
+        if (!patients.hasNext()) {
+            return false;
+        }
+        current = patients.next();
+        return true;
+    }
+
+}
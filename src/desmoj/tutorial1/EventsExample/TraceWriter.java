@@ -0,0 +1,183 @@
+package desmoj.tutorial1.EventsExample;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Compact replacement for the HTML trace of the generator events.
+ *
+ * Writes one JSON object per line (newline-delimited JSON) through a large
+ * buffer, e.g.
+ * <pre>
+ * {"t":1051.2,"event":"arrival","cho":"CHO4","sex":2,"hosp":300,"res":1600,"age":84,"diag":"S7200","frac":3,"frag":1}
+ * </pre>
+ * Only every sampleEvery-th record is written. When the current file grows
+ * beyond maxBytes it is rotated to file.1 (file.1 to file.2 and so on) and
+ * at most maxFiles files are kept, so the trace needs bounded disk space
+ * however long the run is. TraceWriter.OFF discards everything.
+ */
+public class TraceWriter {
+
+    /** a trace writer that writes nothing */
+    public static final TraceWriter OFF = new TraceWriter();
+
+    private final Path file;
+    private final int sampleEvery;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final StringBuilder line = new StringBuilder(160);
+    private Writer out;
+    private long bytes = 0;
+    private long records = 0;
+    private long written = 0;
+
+    private TraceWriter() {
+        file = null;
+        sampleEvery = 1;
+        maxBytes = Long.MAX_VALUE;
+        maxFiles = 1;
+    }
+
+    /**
+     * @param file the trace file; rotated files get the suffixes .1, .2, ...
+     * @param sampleEvery write one record out of this many
+     * @param maxBytes size at which the file is rotated
+     * @param maxFiles number of files kept, including the current one
+     */
+    public TraceWriter(Path file, int sampleEvery, long maxBytes, int maxFiles) {
+        this.file = file;
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        Open();
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Traces the arrival of a patient at the given simulation time (in
+     * minutes), subject to sampling.
+     */
+    public void Arrival(double time, PatientRecord patient) {
+        if (!Sample()) {
+            return;
+        }
+        line.setLength(0);
+        line.append("{\"t\":").append(time)
+                .append(",\"event\":\"arrival\",\"cho\":\"");
+        Escape(patient.CHO);
+        line.append("\",\"sex\":").append(patient.Sex)
+                .append(",\"hosp\":").append(patient.Hospital)
+                .append(",\"res\":").append(patient.ResID)
+                .append(",\"age\":").append(patient.Age)
+                .append(",\"diag\":\"").append(patient.Diag1)
+                .append("\",\"frac\":").append(patient.FracType)
+                .append(",\"frag\":").append(patient.Fragility)
+                .append("}\n");
+        Write();
+    }
+
+    /**
+     * Traces a free text note, subject to sampling.
+     */
+    public void Note(double time, String event, String text) {
+        if (!Sample()) {
+            return;
+        }
+        line.setLength(0);
+        line.append("{\"t\":").append(time).append(",\"event\":\"");
+        Escape(event);
+        line.append("\",\"note\":\"");
+        Escape(text);
+        line.append("\"}\n");
+        Write();
+    }
+
+    /** @return number of records offered, written or not */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /** @return number of records written */
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public void Close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean Sample() {
+        return file != null && records++ % sampleEvery == 0;
+    }
+
+    private void Escape(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(' ');
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    private void Write() {
+        try {
+            if (bytes + line.length() > maxBytes && bytes > 0) {
+                Rotate();
+            }
+            out.append(line);
+            bytes += line.length();
+            written++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void Open() {
+        try {
+            out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16);
+            bytes = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void Rotate() throws IOException {
+        out.close();
+        Files.deleteIfExists(Rotated(maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            Path source = Rotated(i);
+            if (Files.exists(source)) {
+                Files.move(source, Rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Open();
+    }
+
+    /** @return the file with the given rotation number, 0 being the current one */
+    private Path Rotated(int number) {
+        return number == 0 ? file : Paths.get(file.toString() + "." + number);
+    }
+
+}